@@ -1,11 +1,20 @@
 package org.jhd;
 
-import jakarta.persistence.*;
 import org.jhd.entity.ProgrammingLanguage;
+import org.jhd.loader.BulkLoadSettings;
+import org.jhd.loader.BulkLoader;
+import org.jhd.loader.InputFormat;
+import org.jhd.loader.LoadResult;
 import org.jhd.service.JpaService;
 
-import java.util.Arrays;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Objects;
 
 //https://www.youtube.com/watch?v=UVo2SRR-ZRM - MariaDB
 public class ProgrammingLanguageApplication {
@@ -46,25 +55,38 @@ public class ProgrammingLanguageApplication {
         }
     }
 
+    //reference data - seed/programming-languages.csv through the bulk loader: a StatelessSession per partition and
+    //JDBC batches instead of one persist() per row in one transaction. Millions of rows load the same way from a file,
+    //with a checkpoint file to resume, see BulkLoader
     private static void createProgrammingLanguages() {
-        jpaService.runInTransaction(entityManager -> {
-            Arrays.stream("Java,JavaScript,C++,C#,Python,Go,Rust,PHP".split(","))
-                    .map(name -> new ProgrammingLanguage(name, (int) (Math.random() * 10)))
-                    //.forEach(pl -> entityManager.persist(pl));
-                    .forEach(entityManager::persist);
-            return null;
-        });
+//        jpaService.runInTransaction(entityManager -> {
+//            Arrays.stream("Java,JavaScript,C++,C#,Python,Go,Rust,PHP".split(","))
+//                    .map(name -> new ProgrammingLanguage(name, (int) (Math.random() * 10)))
+//                    //.forEach(pl -> entityManager.persist(pl));
+//                    .forEach(entityManager::persist);
+//            return null;
+//        });
+        BulkLoader<ProgrammingLanguage> loader = new BulkLoader<>(jpaService.getEntityManagerFactory(),
+                fields -> new ProgrammingLanguage(fields.get("name"), Integer.valueOf(fields.get("rating"))),
+                new BulkLoadSettings(2, 1000, 50, 4, null));
+        InputStream seed = ProgrammingLanguageApplication.class.getResourceAsStream("/seed/programming-languages.csv");
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(Objects.requireNonNull(seed),
+                StandardCharsets.UTF_8))) {
+            LoadResult result = loader.load(input, InputFormat.CSV);
+            System.out.println("Loaded " + result.loaded() + " programming languages in " + result.elapsed().toMillis()
+                    + " ms");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private static void printProgrammingLanguages() {
-        List<ProgrammingLanguage> programmingLanguages = jpaService.runInTransaction(entityManager -> {
-           Query query =  entityManager.createQuery("""
-                   SELECT pl FROM ProgrammingLanguage pl
-                   WHERE pl.rating > 5
-                   """,
-                   ProgrammingLanguage.class);
-           return query.getResultList();
-        });
+        //read-only - nothing to flush or dirty check
+        //the query result is cached, see the named query on ProgrammingLanguage
+        List<ProgrammingLanguage> programmingLanguages = jpaService.runReadOnly(entityManager -> entityManager
+                .createNamedQuery(ProgrammingLanguage.FIND_RATED_ABOVE, ProgrammingLanguage.class)
+                .setParameter("rating", 5)
+                .getResultList());
         programmingLanguages.stream()
                 .map(pl -> pl.getName() + " : " + pl.getRating())
                 .forEach(System.out::println);
@@ -0,0 +1,142 @@
+package org.jhd.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+//W-TinyLFU eviction. get() computes a missing entry inside the lock of Caffeine's hash bin, so concurrent misses
+//on the same key wait for one load, and a put()/invalidate() of that key waits for the load to finish and wins.
+//Caffeine's bulk load does not hold those locks, getAll() loads the missing keys itself: each one gets a token
+//that put()/merge()/invalidate() remove, and a loaded value is only cached while its token is still there - a
+//write during the load wins over the state the load read. The writes and that check run in the lock of the key's
+//entry in loading (not in Caffeine's compute, which would count every value as a load).
+class CaffeineNearCache<K, V> implements NearCache<K, V> {
+    private final Cache<K, V> cache;
+    //the bulk loads are not Caffeine's, their loads are recorded here
+    private final StatsCounter stats = new ConcurrentStatsCounter();
+    //getAll() loads in progress, key -> token of the getAll() call
+    private final ConcurrentMap<K, Object> loading = new ConcurrentHashMap<>();
+
+    CaffeineNearCache(NearCacheSettings settings) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(settings.maximumSize())
+                .recordStats(() -> stats);
+        if (!settings.expireAfterWrite().isZero()) {
+            builder.expireAfterWrite(settings.expireAfterWrite());
+        }
+        this.cache = builder.build();
+    }
+
+    @Override
+    public V get(K key, Function<K, V> loader) {
+        return cache.get(key, loader);
+    }
+
+    //no stampede protection here: concurrent getAll() missing the same keys each load them, the last one to start
+    //is the one cached
+    @Override
+    public Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> loader) {
+        Map<K, V> cached = cache.getAllPresent(keys);
+        Set<K> missingKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (!cached.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return inKeyOrder(keys, cached);
+        }
+        Object token = new Object();
+        for (K key : missingKeys) {
+            loading.put(key, token);
+        }
+        Map<K, V> values = new LinkedHashMap<>(cached);
+        long start = System.nanoTime();
+        Map<K, V> loaded;
+        try {
+            loaded = loader.apply(missingKeys);
+        } catch (RuntimeException e) {
+            missingKeys.forEach(key -> loading.remove(key, token));
+            stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        stats.recordLoadSuccess(System.nanoTime() - start);
+        for (K key : missingKeys) {
+            V value = loaded.get(key);
+            loading.computeIfPresent(key, (k, current) -> {
+                if (current != token) {
+                    return current;
+                }
+                if (value != null) {
+                    cache.asMap().putIfAbsent(k, value);
+                }
+                return null;
+            });
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return inKeyOrder(keys, values);
+    }
+
+    private static <K, V> Map<K, V> inKeyOrder(Collection<K> keys, Map<K, V> values) {
+        Map<K, V> ordered = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = values.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        write(key, () -> cache.put(key, value));
+    }
+
+    @Override
+    public void merge(K key, V value, BinaryOperator<V> remapping) {
+        write(key, () -> cache.asMap().merge(key, value, remapping));
+    }
+
+    @Override
+    public void invalidate(K key) {
+        write(key, () -> cache.invalidate(key));
+    }
+
+    //drops the token of a getAll() loading the key
+    private void write(K key, Runnable write) {
+        loading.compute(key, (k, token) -> {
+            write.run();
+            return null;
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        loading.clear();
+        cache.invalidateAll();
+    }
+
+    @Override
+    public NearCacheStatistics getStatistics() {
+        //evictions run asynchronously - apply the pending ones
+        cache.cleanUp();
+        CacheStats stats = cache.stats();
+        return new NearCacheStatistics(stats.hitCount(), stats.missCount(), stats.loadCount(),
+                stats.totalLoadTime(), stats.evictionCount(), cache.estimatedSize());
+    }
+}
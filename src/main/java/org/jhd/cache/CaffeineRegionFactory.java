@@ -0,0 +1,107 @@
+package org.jhd.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//In-process second-level cache regions backed by Caffeine: bounded (W-TinyLFU eviction), optional expiry and
+//hit/miss/eviction statistics per region. Plugged in with
+//  hibernate.cache.region.factory_class=org.jhd.cache.CaffeineRegionFactory
+//Size and expiry are configured per region with the persistence unit properties below, e.g.
+//  jhd.cache.region.product.maximum-size=10000
+//  jhd.cache.region.product.expire-after-write-seconds=600
+//regions without their own settings use jhd.cache.default.*
+public class CaffeineRegionFactory extends RegionFactoryTemplate {
+    public static final String PROPERTY_PREFIX = "jhd.cache.";
+    public static final String MAXIMUM_SIZE = "maximum-size";
+    public static final String EXPIRE_AFTER_WRITE_SECONDS = "expire-after-write-seconds";
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final Map<String, CaffeineStorageAccess> regions = new ConcurrentHashMap<>();
+    private Map<String, Object> configValues = Map.of();
+
+    public static CaffeineRegionFactory from(EntityManagerFactory entityManagerFactory) {
+        return (CaffeineRegionFactory) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getCache()
+                .getRegionFactory();
+    }
+
+    public RegionStatistics getRegionStatistics(String regionName) {
+        CaffeineStorageAccess region = regions.get(regionName);
+        if (region == null) {
+            throw new IllegalArgumentException("No second-level cache region named " + regionName);
+        }
+        return region.getStatistics();
+    }
+
+    public Map<String, RegionStatistics> getStatistics() {
+        Map<String, RegionStatistics> statistics = new ConcurrentHashMap<>();
+        regions.forEach((name, region) -> statistics.put(name, region.getStatistics()));
+        return statistics;
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+        this.configValues = configValues;
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        regions.values().forEach(CaffeineStorageAccess::release);
+        regions.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return createRegion(regionConfig.getRegionName(), true);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+                                                                  SessionFactoryImplementor sessionFactory) {
+        return createRegion(regionName, true);
+    }
+
+    //update timestamps tell the query cache which results are stale, losing one would serve stale query results -
+    //this region is never bounded nor expired (it holds one entry per table)
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+                                                                SessionFactoryImplementor sessionFactory) {
+        return createRegion(regionName, false);
+    }
+
+    private CaffeineStorageAccess createRegion(String regionName, boolean bounded) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (bounded) {
+            builder.maximumSize(longProperty(regionName, MAXIMUM_SIZE, DEFAULT_MAXIMUM_SIZE));
+            long expireAfterWriteSeconds = longProperty(regionName, EXPIRE_AFTER_WRITE_SECONDS, 0);
+            if (expireAfterWriteSeconds > 0) {
+                builder.expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds));
+            }
+        }
+        CaffeineStorageAccess region = new CaffeineStorageAccess(builder.build());
+        regions.put(regionName, region);
+        return region;
+    }
+
+    //jhd.cache.region.<regionName>.<name>, then jhd.cache.default.<name>
+    private long longProperty(String regionName, String name, long defaultValue) {
+        Object value = configValues.get(PROPERTY_PREFIX + "region." + regionName + "." + name);
+        if (value == null) {
+            value = configValues.get(PROPERTY_PREFIX + "default." + name);
+        }
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,37 @@
+package org.jhd.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+//Application-level cache of immutable values. get() loads a missing key at most once at a time: concurrent
+//callers missing on the same key wait for that load instead of all hitting the database (stampede protection).
+//A null loaded value is returned but not cached.
+public interface NearCache<K, V> {
+    V get(K key, Function<K, V> loader);
+
+    //the cached keys are served from the cache, the missing ones are passed together to one loader call (one query
+    //instead of one per key). Keys the loader leaves out of its map are not in the result and are not cached
+    Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> loader);
+
+    void put(K key, V value);
+
+    //puts value when the key is not cached, else keeps remapping(cached, value) - atomic for the key, so concurrent
+    //writers of the same key can decide which value wins (e.g. the higher version) instead of the last put
+    void merge(K key, V value, BinaryOperator<V> remapping);
+
+    void invalidate(K key);
+
+    void invalidateAll();
+
+    NearCacheStatistics getStatistics();
+
+    static <K, V> NearCache<K, V> create(NearCacheSettings settings) {
+        return switch (settings.evictionPolicy()) {
+            case W_TINY_LFU -> new CaffeineNearCache<>(settings);
+            case LRU -> new StripedLruNearCache<>(settings);
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package org.jhd.cache;
+
+import java.time.Duration;
+
+//expireAfterWrite - Duration.ZERO never expires
+public record NearCacheSettings(
+        EvictionPolicy evictionPolicy,
+        long maximumSize,
+        Duration expireAfterWrite) {
+
+    public enum EvictionPolicy {
+        //frequency and recency based admission/eviction (Caffeine) - better hit ratio on skewed workloads
+        W_TINY_LFU,
+        //least recently used, per lock stripe
+        LRU
+    }
+}
@@ -0,0 +1,20 @@
+package org.jhd.cache;
+
+//counters since the cache was created - size is an estimate
+public record NearCacheStatistics(
+        long hitCount,
+        long missCount,
+        long loadCount,
+        long totalLoadTimeNanos,
+        long evictionCount,
+        long size) {
+
+    public double hitRatio() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    public double averageLoadPenaltyNanos() {
+        return loadCount == 0 ? 0 : (double) totalLoadTimeNanos / loadCount;
+    }
+}
@@ -0,0 +1,14 @@
+package org.jhd.cache;
+
+//counters of one second-level cache region since the EntityManagerFactory was created - size is an estimate
+public record RegionStatistics(
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        long size) {
+
+    public double hitRatio() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+}
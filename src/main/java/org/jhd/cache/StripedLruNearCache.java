@@ -0,0 +1,242 @@
+package org.jhd.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+//LRU eviction. The keys are spread over STRIPES access-ordered LinkedHashMaps, each with its own lock, so
+//threads only contend when their keys fall in the same stripe. LRU order and the size bound are per stripe.
+class StripedLruNearCache<K, V> implements NearCache<K, V> {
+    private static final int STRIPES = 16;
+
+    private final List<Stripe> stripes;
+    private final long expireAfterWriteNanos;
+    //loads in progress - concurrent misses on the same key join the same future
+    private final ConcurrentMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    StripedLruNearCache(NearCacheSettings settings) {
+        int stripeCapacity = (int) Math.max(1, (settings.maximumSize() + STRIPES - 1) / STRIPES);
+        this.stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new Stripe(stripeCapacity));
+        }
+        this.expireAfterWriteNanos = settings.expireAfterWrite().toNanos();
+    }
+
+    @Override
+    public V get(K key, Function<K, V> loader) {
+        V value = stripe(key).get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inProgress = loading.putIfAbsent(key, load);
+        if (inProgress != null) {
+            return inProgress.join();
+        }
+        long start = System.nanoTime();
+        try {
+            value = loader.apply(key);
+            stripe(key).putLoaded(key, value, load);
+            load.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            loading.remove(key, load);
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.increment();
+            loadTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    //no stampede protection here: concurrent getAll() missing the same keys each load them. The missing keys are
+    //registered in loading like a get() - a key another load already has is loaded but not cached, and get() misses
+    //on the registered ones wait for this load
+    @Override
+    public Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> loader) {
+        Map<K, V> cached = new HashMap<>();
+        Set<K> missingKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            V value = stripe(key).get(key);
+            if (value != null) {
+                hits.increment();
+                cached.put(key, value);
+            } else if (missingKeys.add(key)) {
+                misses.increment();
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return inKeyOrder(keys, cached);
+        }
+        Map<K, CompletableFuture<V>> ownLoads = new HashMap<>();
+        for (K key : missingKeys) {
+            CompletableFuture<V> load = new CompletableFuture<>();
+            if (loading.putIfAbsent(key, load) == null) {
+                ownLoads.put(key, load);
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            Map<K, V> loaded = loader.apply(missingKeys);
+            for (K key : missingKeys) {
+                V value = loaded.get(key);
+                CompletableFuture<V> load = ownLoads.get(key);
+                if (load != null) {
+                    stripe(key).putLoaded(key, value, load);
+                    load.complete(value);
+                }
+                if (value != null) {
+                    cached.put(key, value);
+                }
+            }
+            return inKeyOrder(keys, cached);
+        } catch (RuntimeException e) {
+            ownLoads.forEach((key, load) -> {
+                loading.remove(key, load);
+                load.completeExceptionally(e);
+            });
+            throw e;
+        } finally {
+            loads.increment();
+            loadTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static <K, V> Map<K, V> inKeyOrder(Collection<K> keys, Map<K, V> values) {
+        Map<K, V> ordered = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = values.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        loading.remove(key);
+        stripe(key).put(key, value);
+    }
+
+    @Override
+    public void merge(K key, V value, BinaryOperator<V> remapping) {
+        loading.remove(key);
+        stripe(key).merge(key, value, remapping);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        loading.remove(key);
+        stripe(key).remove(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        loading.clear();
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    @Override
+    public NearCacheStatistics getStatistics() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return new NearCacheStatistics(hits.sum(), misses.sum(), loads.sum(), loadTimeNanos.sum(), evictions.sum(),
+                size);
+    }
+
+    private Stripe stripe(K key) {
+        int hash = key.hashCode();
+        //spread the high bits, like HashMap
+        return stripes.get(((hash ^ (hash >>> 16)) & 0x7fffffff) % STRIPES);
+    }
+
+    private record Entry<V>(V value, long writtenAt) {
+    }
+
+    private final class Stripe {
+        private final LinkedHashMap<K, Entry<V>> entries;
+
+        private Stripe(int capacity) {
+            //access order - get() moves the entry to the end, the eldest is the least recently used
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized V get(K key) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (expireAfterWriteNanos > 0 && System.nanoTime() - entry.writtenAt() > expireAfterWriteNanos) {
+                entries.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry.value();
+        }
+
+        private synchronized void put(K key, V value) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        }
+
+        //a put(), merge() or invalidate() while loading removed the future - the loaded value may be stale, keep
+        //theirs. Checked in the lock: they remove the future before they take it to write the entry
+        private synchronized void putLoaded(K key, V value, CompletableFuture<V> load) {
+            if (loading.remove(key, load) && value != null) {
+                entries.put(key, new Entry<>(value, System.nanoTime()));
+            }
+        }
+
+        //an expired entry counts as missing
+        private synchronized void merge(K key, V value, BinaryOperator<V> remapping) {
+            V cached = get(key);
+            entries.put(key, new Entry<>(cached == null ? value : remapping.apply(cached, value), System.nanoTime()));
+        }
+
+        private synchronized void remove(K key) {
+            entries.remove(key);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
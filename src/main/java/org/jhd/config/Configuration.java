@@ -0,0 +1,181 @@
+package org.jhd.config;
+
+import org.jhd.persistence.PoolSettings;
+import org.jhd.persistence.ReplicaSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+//Persistence configuration out of the Java source, so the same build runs with SQL echo on a laptop and tuned in
+//production. Each layer overrides the one before it:
+//  1. classpath config/application.properties - settings shared by every profile
+//  2. classpath config/application-<profile>.properties - dev, test-h2, prod-throughput, prod-latency, batch
+//  3. environment variables - the key upper-cased with every non alphanumeric character replaced by '_',
+//     e.g. JHD_DATASOURCE_PASSWORD overrides jhd.datasource.password. Only keys of the first two layers can be
+//     overridden this way (there is no way back from JHD_POOL_MAXIMUM_SIZE to jhd.pool.maximum-size)
+//  4. system properties - the key itself, -Djhd.datasource.url=...
+//The profile is the jhd.profile system property, else the JHD_PROFILE environment variable, else dev.
+//jhd.datasource.* and jhd.pool.* configure the connection pool (poolSettings()) and the replicas
+//(replicaPoolSettings(), replicaSettings()), every other key is passed to Hibernate as a persistence unit property
+//(jpaProperties()).
+public final class Configuration {
+    public static final String PROFILE = "jhd.profile";
+    public static final String DEFAULT_PROFILE = "dev";
+
+    private static final String DATASOURCE_PREFIX = "jhd.datasource.";
+    private static final String POOL_PREFIX = "jhd.pool.";
+    private static final String POOL_DATA_SOURCE_PREFIX = "jhd.pool.data-source.";
+
+    private final String profile;
+    private final Map<String, String> values;
+
+    private Configuration(String profile, Map<String, String> values) {
+        this.profile = profile;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    public static Configuration load() {
+        String profile = System.getProperty(PROFILE, System.getenv().getOrDefault("JHD_PROFILE", DEFAULT_PROFILE));
+        return load(profile);
+    }
+
+    public static Configuration load(String profile) {
+        return load(profile, System.getenv(), System.getProperties());
+    }
+
+    static Configuration load(String profile, Map<String, String> environment, Properties systemProperties) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (!readResource("config/application.properties", values)) {
+            throw new IllegalStateException("config/application.properties not found on the classpath");
+        }
+        if (!readResource("config/application-" + profile + ".properties", values)) {
+            throw new IllegalArgumentException("Unknown profile " + profile + ": config/application-" + profile
+                    + ".properties not found on the classpath");
+        }
+        values.replaceAll((key, value) -> environment.getOrDefault(environmentVariableName(key), value));
+        systemProperties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith("jhd.") || key.startsWith("hibernate.")
+                        || key.startsWith("jakarta.persistence."))
+                .forEach(key -> values.put(key, systemProperties.getProperty(key)));
+        return new Configuration(profile, values);
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    //null when the key is not configured
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    //pool keys left out fall back to PoolSettings.forUrl
+    public PoolSettings poolSettings() {
+        String url = values.get(DATASOURCE_PREFIX + "url");
+        if (url == null) {
+            throw new IllegalStateException("Profile " + profile + " configures no " + DATASOURCE_PREFIX + "url");
+        }
+        PoolSettings defaults = PoolSettings.forUrl(url, values.getOrDefault(DATASOURCE_PREFIX + "username", ""),
+                values.getOrDefault(DATASOURCE_PREFIX + "password", ""));
+        int maximumPoolSize = intValue(POOL_PREFIX + "maximum-size", defaults.maximumPoolSize());
+        Map<String, String> dataSourceProperties = new HashMap<>(defaults.dataSourceProperties());
+        values.forEach((key, value) -> {
+            if (key.startsWith(POOL_DATA_SOURCE_PREFIX)) {
+                dataSourceProperties.put(key.substring(POOL_DATA_SOURCE_PREFIX.length()), value);
+            }
+        });
+        return new PoolSettings(defaults.jdbcUrl(), defaults.username(), defaults.password(),
+                maximumPoolSize,
+                //fixed-size pool unless told otherwise
+                intValue(POOL_PREFIX + "minimum-idle", maximumPoolSize),
+                Duration.ofMillis(intValue(POOL_PREFIX + "connection-timeout-ms",
+                        (int) defaults.connectionTimeout().toMillis())),
+                Duration.ofMillis(intValue(POOL_PREFIX + "leak-detection-threshold-ms",
+                        (int) defaults.leakDetectionThreshold().toMillis())),
+                dataSourceProperties,
+                Boolean.parseBoolean(values.getOrDefault(POOL_PREFIX + "lazy-start", "false").trim()));
+    }
+
+    //jhd.datasource.replica-urls, comma separated - absent or empty: no replica. The replicas are given the
+    //credentials and pool settings of the primary
+    public List<PoolSettings> replicaPoolSettings() {
+        String urls = values.getOrDefault(DATASOURCE_PREFIX + "replica-urls", "");
+        if (urls.isBlank()) {
+            return List.of();
+        }
+        PoolSettings primary = poolSettings();
+        return Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(primary::withJdbcUrl)
+                .toList();
+    }
+
+    //jhd.datasource.replica-load-balancing=round-robin|least-connections and
+    //jhd.datasource.read-your-writes-ms, ReplicaSettings.defaults() for the keys left out
+    public ReplicaSettings replicaSettings() {
+        ReplicaSettings defaults = ReplicaSettings.defaults();
+        String loadBalancing = values.get(DATASOURCE_PREFIX + "replica-load-balancing");
+        return new ReplicaSettings(
+                loadBalancing == null
+                        ? defaults.loadBalancing()
+                        : ReplicaSettings.LoadBalancing.valueOf(
+                                loadBalancing.trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+                Duration.ofMillis(intValue(DATASOURCE_PREFIX + "read-your-writes-ms",
+                        (int) defaults.readYourWritesWindow().toMillis())));
+    }
+
+    //everything but the pool settings, which Hibernate does not read
+    public Map<String, Object> jpaProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        values.forEach((key, value) -> {
+            if (!key.startsWith(DATASOURCE_PREFIX) && !key.startsWith(POOL_PREFIX) && !key.equals(PROFILE)) {
+                properties.put(key, value);
+            }
+        });
+        return properties;
+    }
+
+    private int intValue(String key, int defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    static String environmentVariableName(String key) {
+        return key.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]", "_");
+    }
+
+    private static boolean readResource(String name, Map<String, String> values) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (InputStream input = classLoader.getResourceAsStream(name)) {
+            if (input == null) {
+                return false;
+            }
+            Properties properties = new Properties();
+            properties.load(input);
+            properties.stringPropertyNames().forEach(key -> values.put(key, properties.getProperty(key).trim()));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Configuration[profile=" + profile + "]";
+    }
+}
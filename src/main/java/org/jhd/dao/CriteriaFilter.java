@@ -0,0 +1,13 @@
+package org.jhd.dao;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+//WHERE clause of a bulk statement, built with the Criteria API, e.g.
+//  (root, cb) -> cb.like(root.get("name"), "Biscuit%")
+//  (root, cb) -> cb.lessThan(root.get("price"), 10.0)
+@FunctionalInterface
+public interface CriteriaFilter<T> {
+    Predicate toPredicate(Root<T> root, CriteriaBuilder criteriaBuilder);
+}
@@ -1,23 +1,66 @@
 package org.jhd.dao;
 
+import org.jhd.dto.Page;
 import org.jhd.dto.ProductDto;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface Dao<T, V> {
     Optional<T> get(long id);
 
     List<T> getAll();
 
+    //one lookup for many ids instead of one get() each - id -> entity in the order of ids, duplicates are read
+    //once and ids without a row are left out
+    Map<Long, T> getAllById(Collection<Long> ids);
+
+    //projections - only the columns of V are read, no entity is created nor managed
+    Optional<V> getDto(long id);
+
+    List<V> getAllAsDto();
+
+    //keyset (seek) pagination - the limit elements following afterId (null for the first page), ordered by id
+    Page<T> getPage(Long afterId, int limit);
+
+    //OFFSET/LIMIT pagination, pageNumber starts at 0 - the database reads and skips every row before the page,
+    //so prefer getPage() for deep pages
+    Page<T> getPageByOffset(int pageNumber, int limit);
+
+    //constant memory scan of the whole table - consumer is called once per row
+    void streamAll(Consumer<T> consumer);
+
+    //must be closed (try-with-resources) - it holds a session and a JDBC cursor until then
+    Stream<T> stream();
+
     void save(T t);
 
+    void saveAll(Collection<T> ts);
+
+    //closes the stream
+    void saveAll(Stream<T> ts);
+
     T updateWithMergeDetached(T t, V v);
 
     T updateWithGetPersistent(T t, V v);
 
+    //id -> new values, all in one transaction. A null field of V leaves the column as it is, ids without a row are
+    //skipped - returns the number of rows updated
+    int updateAll(Map<Long, V> updates);
+
     void delete(T t);
 
+    //set-based operations - one UPDATE/DELETE statement, no entity is loaded. They return the number of rows
+    int updatePriceWhere(CriteriaFilter<T> filter, double newPrice);
+
+    int applyPriceMultiplier(CriteriaFilter<T> filter, double factor);
+
+    int deleteWhere(CriteriaFilter<T> filter);
+
     void deleteEMPerClass(T t);
 
     void saveEMPerClass(T t);
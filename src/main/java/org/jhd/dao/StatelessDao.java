@@ -0,0 +1,35 @@
+package org.jhd.dao;
+
+import java.util.Collection;
+import java.util.Optional;
+
+//Write path without a persistence context - every call is one short transaction in a StatelessSession: no
+//first-level cache, no snapshot, no dirty checking, no cascading and no flush. Entities are never managed: what
+//is passed in is written as is, what is returned is detached.
+//For high-volume fire-and-forget writes (ingest, price events); use Dao when the entity graph, cascades or
+//@DynamicUpdate matter.
+public interface StatelessDao<T> {
+    //read straight from the database, the second-level cache is not consulted
+    Optional<T> get(long id);
+
+    void insert(T t);
+
+    //one transaction, sent in JDBC batches when the ids are not generated by the INSERT
+    void insertAll(Collection<T> ts);
+
+    //UPDATE of every column of t, without reading the row first. Versioned entities are checked against (and
+    //given) their version: org.hibernate.StaleObjectStateException if the row changed since t was read (a
+    //StatelessSession does not translate it to the JPA OptimisticLockException)
+    void update(T t);
+
+    void updateAll(Collection<T> ts);
+
+    //UPDATE ... SET price WHERE id, the version is incremented but not checked (the new price wins) - returns the
+    //number of rows updated (0 when there is no such row)
+    int updatePrice(long id, double newPrice);
+
+    void delete(T t);
+
+    //DELETE ... WHERE id - returns the number of rows deleted
+    int deleteById(long id);
+}
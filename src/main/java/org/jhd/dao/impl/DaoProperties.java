@@ -0,0 +1,27 @@
+package org.jhd.dao.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+
+//Persistence unit properties read by the DAOs - ProductDao and StatelessProductDao parse them here so they agree on
+//the defaults
+final class DaoProperties {
+    //used when the persistence unit does not configure hibernate.jdbc.batch_size
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    private DaoProperties() {
+    }
+
+    static int jdbcBatchSize(EntityManagerFactory entityManagerFactory) {
+        return intProperty(entityManagerFactory, "hibernate.jdbc.batch_size", DEFAULT_BATCH_SIZE);
+    }
+
+    //defaultValue when the property is absent or not > 0
+    static int intProperty(EntityManagerFactory entityManagerFactory, String name, int defaultValue) {
+        Object value = entityManagerFactory.getProperties().get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int intValue = Integer.parseInt(value.toString().trim());
+        return intValue > 0 ? intValue : defaultValue;
+    }
+}
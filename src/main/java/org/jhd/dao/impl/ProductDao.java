@@ -1,16 +1,41 @@
 package org.jhd.dao.impl;
 
+import jakarta.persistence.Cache;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.jpa.AvailableHints;
+import org.jhd.dao.CriteriaFilter;
 import org.jhd.dao.Dao;
+import org.jhd.dto.Page;
 import org.jhd.dto.ProductDto;
 import org.jhd.entity.Product;
+import org.jhd.exception.ResourceNotFoundException;
+import org.jhd.metrics.DataAccessMetrics;
+import org.jhd.persistence.EntityManagerLifecycle;
+import org.jhd.persistence.ReplicaRoutingDataSource;
+import org.jhd.persistence.ThreadLocalEntityManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 //https://www.baeldung.com/java-dao-pattern
 //In some scenarios we don't always need to use the DAO pattern’s functionality with JPA as the pattern becomes just another layer of
@@ -20,8 +45,27 @@ import java.util.function.Function;
 
 //@Transactional only works when we call the method throw proxy
 //@Transactional
-public class ProductDao implements Dao<Product, ProductDto> {
-    private final EntityManagerFactory emf;
+public class ProductDao implements Dao<Product, ProductDto>, AutoCloseable {
+    //used when the persistence unit does not configure hibernate.jdbc.fetch_size
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    //ids per SELECT of getAllById()
+    public static final String MULTI_LOAD_BATCH_SIZE = "jhd.dao.multi-load-batch-size";
+    private static final int DEFAULT_MULTI_LOAD_BATCH_SIZE = 100;
+
+    //creates and always closes the EntityManagers of the per-transaction methods
+    private final EntityManagerLifecycle lifecycle;
+
+    //created by ProductDao(EntityManagerFactory) - close() closes it, a shared one is closed by its owner
+    private final boolean ownsLifecycle;
+
+    //number of entities persisted between two flush/clear of the persistence context in saveAll()
+    private final int batchSize;
+
+    //number of rows fetched per round trip by the cursor of stream()
+    private final int fetchSize;
+
+    //number of ids bound to one SELECT ... WHERE id IN (...) of getAllById()
+    private final int multiLoadBatchSize;
 
     //an EntityManager contains a persistence context, that will track everything it reads from/writes to db.
     //EntityManager per transaction - to avoid bloated memory, we should use a new one per transaction
@@ -29,25 +73,210 @@ public class ProductDao implements Dao<Product, ProductDto> {
     //EntityManger per class - if we read the same object through two different EntityManager we will get
     //different objects back
 
-    //EntityManager per class - not needed for rest of the methods
-    private final EntityManager emPerClass;
+    //latency histogram per method - DataAccessMetrics.global().snapshot().operation("ProductDao.get")
+    private final DataAccessMetrics metrics = DataAccessMetrics.global();
+
+    //EntityManager per class - not needed for rest of the methods.
+    //One context per thread instead of one shared by every thread (an EntityManager is not thread-safe), cleared
+    //past jhd.entity-manager.auto-clear-threshold entities so it does not keep everything it ever touched
+    private final ThreadLocalEntityManager emPerClass;
 
+    //close() the DAO when done with it - it owns a lifecycle, and its leak detector thread when
+    //jhd.entity-manager.leak-detection-threshold-ms is set
     public ProductDao(EntityManagerFactory entityManagerFactory) {
-        this.emf = entityManagerFactory;
-        this.emPerClass = entityManagerFactory.createEntityManager();
+        this(new EntityManagerLifecycle(entityManagerFactory), true);
     }
 
+    //share the lifecycle (and its counters/leak detector) with JpaService or other DAOs
+    public ProductDao(EntityManagerLifecycle entityManagerLifecycle) {
+        this(entityManagerLifecycle, false);
+    }
+
+    private ProductDao(EntityManagerLifecycle entityManagerLifecycle, boolean ownsLifecycle) {
+        EntityManagerFactory entityManagerFactory = entityManagerLifecycle.getEntityManagerFactory();
+        this.lifecycle = entityManagerLifecycle;
+        this.ownsLifecycle = ownsLifecycle;
+        this.emPerClass = new ThreadLocalEntityManager(entityManagerFactory);
+        this.batchSize = DaoProperties.jdbcBatchSize(entityManagerFactory);
+        this.fetchSize = DaoProperties.intProperty(entityManagerFactory, "hibernate.jdbc.fetch_size",
+                DEFAULT_FETCH_SIZE);
+        this.multiLoadBatchSize = DaoProperties.intProperty(entityManagerFactory, MULTI_LOAD_BATCH_SIZE,
+                DEFAULT_MULTI_LOAD_BATCH_SIZE);
+    }
+
+    //the EntityManager is closed as soon as the result is read - the returned entities are detached.
+    //Read-only: entities are not snapshotted for dirty checking, which roughly halves the heap per loaded entity
     @Override
     public Optional<Product> get(long id) {
-        EntityManager em = emf.createEntityManager();
-        return Optional.ofNullable(em.find(Product.class, id));
+        return executeReadOnly("ProductDao.get", em -> Optional.ofNullable(em.find(Product.class, id)));
     }
 
     @Override
     public List<Product> getAll() {
-        EntityManager em = emf.createEntityManager();
-        return em.createQuery("SELECT p FROM Product p", Product.class)
-                .getResultList();
+        return executeReadOnly("ProductDao.getAll", em -> em.createNamedQuery(Product.FIND_ALL, Product.class)
+                .getResultList());
+    }
+
+    //One EntityManager for the whole lookup instead of one get() (one EntityManager, one SELECT) per id: the ids in
+    //the second-level cache are resolved without SQL, the rest are read multiLoadBatchSize at a time with one
+    //SELECT ... WHERE id IN (...). Duplicated ids are looked up once, and the persistence context hands back the
+    //same instance for an id whichever way it was read.
+    //hibernate.query.in_clause_parameter_padding rounds the IN list up to the next power of 2 (the last id is
+    //repeated) - a handful of distinct statements to prepare and plan instead of one per list size.
+    //Not Session.byMultipleIds(): on dialects with arrays (H2, PostgreSQL) Hibernate 6.2 binds the ids as one
+    //array parameter, which H2 runs as array_contains(?, product_id) - a scan of the whole table
+    @Override
+    public Map<Long, Product> getAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(ids));
+        Cache secondLevelCache = lifecycle.getEntityManagerFactory().getCache();
+        return executeReadOnly("ProductDao.getAllById", em -> {
+            Map<Long, Product> found = new HashMap<>();
+            List<Long> missingIds = new ArrayList<>();
+            for (Long id : distinctIds) {
+                if (secondLevelCache.contains(Product.class, id)) {
+                    //no SQL - unless the entry is evicted in between, then it is a SELECT of this row
+                    Product product = em.find(Product.class, id);
+                    if (product != null) {
+                        found.put(id, product);
+                    }
+                } else {
+                    missingIds.add(id);
+                }
+            }
+            for (int from = 0; from < missingIds.size(); from += multiLoadBatchSize) {
+                em.createNamedQuery(Product.FIND_BY_IDS, Product.class)
+                        .setParameter("ids", missingIds.subList(from,
+                                Math.min(from + multiLoadBatchSize, missingIds.size())))
+                        .getResultList()
+                        .forEach(product -> found.put(product.getId(), product));
+            }
+            Map<Long, Product> productsById = new LinkedHashMap<>();
+            for (Long id : distinctIds) {
+                Product product = found.get(id);
+                if (product != null) {
+                    productsById.put(id, product);
+                }
+            }
+            return productsById;
+        });
+    }
+
+    //constructor expression - Hibernate reads name and price straight into ProductDto records: no entity instance,
+    //no persistence context entry, no snapshot, no proxy. Use it when the caller only displays the data
+    @Override
+    public Optional<ProductDto> getDto(long id) {
+        return executeReadOnly("ProductDao.getDto", em -> em.createQuery("""
+                        SELECT new org.jhd.dto.ProductDto(p.name, p.price) FROM Product p
+                        WHERE p.id = :id
+                        """, ProductDto.class)
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst());
+    }
+
+    @Override
+    public List<ProductDto> getAllAsDto() {
+        return executeReadOnly("ProductDao.getAllAsDto", em -> em.createQuery(
+                        "SELECT new org.jhd.dto.ProductDto(p.name, p.price) FROM Product p", ProductDto.class)
+                .getResultList());
+    }
+
+    //WHERE p.id > :afterId ORDER BY p.id LIMIT n - an index range scan on the primary key that starts right at
+    //the page, so page 10,000 costs the same as page 1. One extra row is fetched to know if there is a next page
+    @Override
+    public Page<Product> getPage(Long afterId, int limit) {
+        checkLimit(limit);
+        return executeReadOnly("ProductDao.getPage", em -> toPage(em.createQuery("""
+                        SELECT p FROM Product p
+                        WHERE p.id > :afterId
+                        ORDER BY p.id
+                        """, Product.class)
+                .setParameter("afterId", afterId == null ? Long.MIN_VALUE : afterId)
+                .setMaxResults(limit + 1)
+                //query cache - keeps the ids of the page, the products come from the second-level cache.
+                //Invalidated by any write to the product table
+                .setHint(AvailableHints.HINT_CACHEABLE, true)
+                .getResultList(), limit));
+    }
+
+    //ORDER BY p.id OFFSET n LIMIT m - the database still has to walk the n skipped rows
+    @Override
+    public Page<Product> getPageByOffset(int pageNumber, int limit) {
+        checkLimit(limit);
+        if (pageNumber < 0) {
+            throw new IllegalArgumentException("pageNumber must be at least 0, was " + pageNumber);
+        }
+        //a page beyond Integer.MAX_VALUE rows fails instead of wrapping to a negative offset
+        int firstResult = Math.multiplyExact(pageNumber, limit);
+        return executeReadOnly("ProductDao.getPageByOffset", em -> toPage(em.createQuery(
+                        "SELECT p FROM Product p ORDER BY p.id", Product.class)
+                .setFirstResult(firstResult)
+                .setMaxResults(limit + 1)
+                .getResultList(), limit));
+    }
+
+    //limit + 1 rows are fetched - Integer.MAX_VALUE would overflow
+    private static void checkLimit(int limit) {
+        if (limit <= 0 || limit == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + (Integer.MAX_VALUE - 1) + ", was "
+                    + limit);
+        }
+    }
+
+    private static Page<Product> toPage(List<Product> products, int limit) {
+        boolean hasNext = products.size() > limit;
+        List<Product> content = hasNext ? products.subList(0, limit) : products;
+        Long nextAfterId = content.isEmpty() ? null : content.get(content.size() - 1).getId();
+        return new Page<>(List.copyOf(content), hasNext, nextAfterId);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        metrics.time("ProductDao.streamAll", () -> {
+            try (Stream<Product> products = stream()) {
+                products.forEach(consumer);
+            }
+        });
+    }
+
+    //getAll() keeps every row of the table in a List and in the persistence context. This reads through a
+    //forward-only cursor (fetchSize rows per round trip) in a StatelessSession - no persistence context, so an
+    //entity can be garbage collected as soon as the caller is done with it and memory stays flat whatever the
+    //size of the table.
+    //MySQL only honours the fetch size with useCursorFetch=true on the JDBC url, otherwise it buffers the whole
+    //result set in the driver.
+    @Override
+    public Stream<Product> stream() {
+        //timed from here until the caller closes the stream
+        long start = System.nanoTime();
+        StatelessSession session = lifecycle.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .openStatelessSession();
+        try {
+            //a replica connection when the unit has some
+            Transaction tx = ReplicaRoutingDataSource.readOnly(session::beginTransaction);
+            session.doWork(connection -> connection.setReadOnly(true));
+            return session.createNamedQuery(Product.FIND_ALL, Product.class)
+                    .setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .getResultStream()
+                    //runs after the cursor is closed
+                    .onClose(() -> {
+                        try {
+                            session.doWork(connection -> connection.setReadOnly(false));
+                            tx.commit();
+                        } finally {
+                            session.close();
+                            metrics.record("ProductDao.stream", System.nanoTime() - start);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
     }
 
     @Override
@@ -64,7 +293,36 @@ public class ProductDao implements Dao<Product, ProductDto> {
 //        } finally {
 //            em.close();
 //        }
-        executeInsideTransaction(em -> em.persist(product));
+        executeInsideTransaction("ProductDao.save", em -> em.persist(product));
+    }
+
+    @Override
+    public void saveAll(Collection<Product> products) {
+        saveAll(products.stream());
+    }
+
+    //one EntityManager and one transaction for the whole stream instead of one per row. The context is flushed
+    //and cleared every batchSize entities so Hibernate can send the INSERTs as one JDBC batch and the context
+    //does not keep every persisted entity (and its snapshot) until commit.
+    //JDBC batching only kicks in when the ids are not generated by the database - GenerationType.IDENTITY
+    //disables it, see META-INF/orm-pooled-ids.xml
+    //The stream is closed when it is consumed, or the transaction failed - its I/O source (Files.lines, stream())
+    //is released and its onClose handlers run
+    @Override
+    public void saveAll(Stream<Product> products) {
+        try (products) {
+            executeInsideTransaction("ProductDao.saveAll", em -> {
+                int count = 0;
+                Iterator<Product> iterator = products.iterator();
+                while (iterator.hasNext()) {
+                    em.persist(iterator.next());
+                    if (++count % batchSize == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+            });
+        }
     }
 
     //https://stackoverflow.com/questions/1069992/jpa-entitymanager-why-use-persist-over-merge
@@ -106,9 +364,16 @@ public class ProductDao implements Dao<Product, ProductDto> {
 //            em.close();
 //        }
 //    }
+    //Product is versioned: merge compares the version of the detached product with the row and throws
+    //OptimisticLockException if another transaction updated it since the product was read. A product without a
+    //version was not read from the database (the caller only knows the id) - it would be taken for a new product
+    //and inserted, it is updated like updateWithGetPersistent does instead
     @Override
     public Product updateWithMergeDetached(Product detachedProduct, ProductDto productDto) {
-        return executeInsideTransactionWithFn(em -> {
+        if (detachedProduct.getVersion() == null) {
+            return updateWithGetPersistent(detachedProduct, productDto);
+        }
+        return executeInsideTransactionWithFn("ProductDao.updateWithMergeDetached", em -> {
             //invoking em.merge(user) before setters or after setters doesn't matter. The persistent entity
             //will be updated when method invocation finishes - both #1 and #2 produce same result
             //#1
@@ -127,6 +392,11 @@ public class ProductDao implements Dao<Product, ProductDto> {
     //We can fetch and modify our objects in the same transaction (i.e. with the same entityManager)
     //like below but it means a lot more database access and this strategy must generally be combined
     //with a second-level cache for performance reason. In this case we won't have to call merge
+    //Product is @Cacheable, so the find() below is served from the second-level cache when the entry is there.
+    //Conflicts: the version of the detached product (when it has one) must be the version of the row, and the
+    //UPDATE fails if another transaction commits between the find() and the flush - OptimisticLockException
+    //in both cases, the caller reads the product again and decides (JpaService.runInTransactionWithRetry for a
+    //read-modify-write that can simply be run again)
     @Override
     public Product updateWithGetPersistent(Product detachedProduct, ProductDto productDto) {
 //        EntityManager em = emf.createEntityManager();
@@ -144,15 +414,59 @@ public class ProductDao implements Dao<Product, ProductDto> {
 //        } finally {
 //            em.close();
 //        }
-        return executeInsideTransactionWithFn(em -> {
+        return executeInsideTransactionWithFn("ProductDao.updateWithGetPersistent", em -> {
             //first get the persistent entity with the same id as the detached one
             Product persistentProduct = em.find(Product.class, detachedProduct.getId());
+            if (persistentProduct == null) {
+                throw new ResourceNotFoundException("Product " + detachedProduct.getId() + " does not exist");
+            }
+            if (detachedProduct.getVersion() != null
+                    && !detachedProduct.getVersion().equals(persistentProduct.getVersion())) {
+                throw new OptimisticLockException("Product " + detachedProduct.getId() + " was updated since it was"
+                        + " read: version " + detachedProduct.getVersion() + ", now "
+                        + persistentProduct.getVersion(), null, detachedProduct);
+            }
             persistentProduct.setName(productDto.name());
             persistentProduct.setPrice(productDto.price());
             return persistentProduct;
         });
     }
 
+    //Coalesced updates (WriteBehindProductUpdater): one transaction for the whole map instead of a SELECT + UPDATE +
+    //commit per update. The products are loaded batchSize ids at a time (one IN query), changed, and flushed - the
+    //UPDATEs of a chunk go out in JDBC batches - then the context is cleared.
+    //The row is updated whatever its version (the caller has none, the latest value wins), but a transaction that
+    //commits a change to one of them between the SELECT and the flush makes this one fail with
+    //OptimisticLockException - nothing is written, the caller can apply the map again
+    @Override
+    public int updateAll(Map<Long, ProductDto> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        return executeInsideTransactionWithFn("ProductDao.updateAll", em -> {
+            List<Long> ids = List.copyOf(updates.keySet());
+            int updated = 0;
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Product> products = em.createNamedQuery(Product.FIND_BY_IDS, Product.class)
+                        .setParameter("ids", ids.subList(from, Math.min(from + batchSize, ids.size())))
+                        .getResultList();
+                for (Product product : products) {
+                    ProductDto productDto = updates.get(product.getId());
+                    if (productDto.name() != null) {
+                        product.setName(productDto.name());
+                    }
+                    if (productDto.price() != null) {
+                        product.setPrice(productDto.price());
+                    }
+                }
+                updated += products.size();
+                em.flush();
+                em.clear();
+            }
+            return updated;
+        });
+    }
+
 //    @Override
 //    public void delete(Product detachedProduct) {
 //        //EntityManager per transaction
@@ -178,7 +492,7 @@ public class ProductDao implements Dao<Product, ProductDto> {
 
     @Override
     public void delete(Product detachedProduct) {
-        executeInsideTransaction(entityManager -> {
+        executeInsideTransaction("ProductDao.delete", entityManager -> {
             //first get the persistent entity product with same id as the detached product
             //passed in the argument and then remove it
 
@@ -197,65 +511,130 @@ public class ProductDao implements Dao<Product, ProductDto> {
         });
     }
 
+    //updateWithGetPersistent/updateWithMergeDetached SELECT every product before updating it, the bulk operations
+    //below run a single UPDATE/DELETE ... WHERE in the database, whatever the number of rows.
+    //They bypass the persistence context and the second-level cache: Hibernate invalidates the product region
+    //and the cached queries on product when a bulk statement runs, we also clear the context used (nothing else
+    //may be read from it) and evict the product region once the transaction is committed.
+    //Product has no category column - the filter is any Criteria predicate on Product
+    @Override
+    public int updatePriceWhere(CriteriaFilter<Product> filter, double newPrice) {
+        return executeBulkOperation("ProductDao.updatePriceWhere", em -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Product> update = cb.createCriteriaUpdate(Product.class);
+            Root<Product> product = update.from(Product.class);
+            update.set(product.<Double>get("price"), newPrice)
+                    .where(filter.toPredicate(product, cb));
+            incrementVersion(update, product, cb);
+            return em.createQuery(update).executeUpdate();
+        });
+    }
+
+    //UPDATE product SET product_price = product_price * :factor WHERE ...
+    @Override
+    public int applyPriceMultiplier(CriteriaFilter<Product> filter, double factor) {
+        return executeBulkOperation("ProductDao.applyPriceMultiplier", em -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Product> update = cb.createCriteriaUpdate(Product.class);
+            Root<Product> product = update.from(Product.class);
+            Path<Double> price = product.get("price");
+            //literal, not a parameter: Hibernate 6.2 casts a parameter used in arithmetic to float($p) which H2 2.2
+            //rejects. It is a double so it is safe to inline (one plan per distinct factor)
+            update.set(price, cb.prod(price, cb.literal(factor)))
+                    .where(filter.toPredicate(product, cb));
+            incrementVersion(update, product, cb);
+            return em.createQuery(update).executeUpdate();
+        });
+    }
+
+    @Override
+    public int deleteWhere(CriteriaFilter<Product> filter) {
+        return executeBulkOperation("ProductDao.deleteWhere", em -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<Product> delete = cb.createCriteriaDelete(Product.class);
+            Root<Product> product = delete.from(Product.class);
+            delete.where(filter.toPredicate(product, cb));
+            return em.createQuery(delete).executeUpdate();
+        });
+    }
+
+    //a bulk UPDATE does not touch the version column by itself (HQL has "update versioned", criteria does not) -
+    //without it an entity read before the statement could still be written over it
+    private static void incrementVersion(CriteriaUpdate<Product> update, Root<Product> product, CriteriaBuilder cb) {
+        Path<Long> version = product.get("version");
+        update.set(version, cb.sum(version, cb.literal(1L)));
+    }
+
+    private int executeBulkOperation(String name, Function<EntityManager, Integer> operation) {
+        return metrics.time(name, () -> {
+            int rowCount = lifecycle.executeInTransaction(em -> {
+                int count = operation.apply(em);
+                em.clear();
+                return count;
+            });
+            lifecycle.getEntityManagerFactory().getCache().evict(Product.class);
+            return rowCount;
+        });
+    }
+
     //EntityManager per transaction
     //centralise boilerplate code
-    private void executeInsideTransaction(Consumer<EntityManager> operation) {
-        //context is empty
-        EntityManager em = emf.createEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        //try-with-resource block - no need to have finally block to close em
-        try (em) {
-            tx.begin();
+    private void executeInsideTransaction(String name, Consumer<EntityManager> operation) {
+        //context is empty - the lifecycle begins the transaction, commits (changes are made into the database
+        //& transaction ends there) or rolls back on exception and closes the EntityManager
+        metrics.time(name, () -> lifecycle.executeInTransaction(em -> {
             operation.accept(em);
             //flush - changes are reflected in database after encountering flush but the transaction
             //is still active so the changes are still in transaction and can be rollback
             //entityManager.flush();
-            //commit - changes are made into the database & transaction ends there
-            tx.commit();
-        } catch (RuntimeException e) {
-            tx.rollback();
-            throw e;
-        }
+            return null;
+        }));
     }
 
     //EntityManager per transaction
-    private <R> R executeInsideTransactionWithFn(Function<EntityManager, R> operation) {
+    private <R> R executeInsideTransactionWithFn(String name, Function<EntityManager, R> operation) {
         //context is empty
-        EntityManager em = emf.createEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try (em) {
-            tx.begin();
-            R returnValue = operation.apply(em);
-            tx.commit();
-            return returnValue;
-        } catch (RuntimeException e) {
-            tx.rollback();
-            throw e;
-        }
+        return metrics.time(name, () -> lifecycle.executeInTransaction(operation));
     }
 
+    //read-only EntityManager per transaction, see EntityManagerLifecycle.executeReadOnly
+    private <R> R executeReadOnly(String name, Function<EntityManager, R> operation) {
+        return metrics.time(name, () -> lifecycle.executeReadOnly(operation));
+    }
 
-
-    //EntityManager per class
-    private void executeInsideTransactionEMPerClass(Consumer<EntityManager> action) {
-        //context already exists
-        EntityTransaction tx = emPerClass.getTransaction();
+    //closes the contexts of emPerClass and the lifecycle the DAO created - only once no thread is using it any more
+    @Override
+    public void close() {
         try {
-            tx.begin();
-            action.accept(emPerClass);
-            tx.commit();
-        } catch (RuntimeException e) {
-            tx.rollback();
-            throw e;
+            emPerClass.close();
+        } finally {
+            if (ownsLifecycle) {
+                lifecycle.close();
+            }
         }
-    }    @Override
+    }
+
+    //EntityManager per class
+    private void executeInsideTransactionEMPerClass(String name, Consumer<EntityManager> action) {
+        //context already exists (for this thread)
+        metrics.time(name, () -> emPerClass.executeInTransaction(em -> {
+            action.accept(em);
+            return null;
+        }));
+    }
+
+    @Override
 //    @Transactional(value = Transactional.TxType.SUPPORTS)
     public void deleteEMPerClass(Product product) {
-        executeInsideTransactionEMPerClass(em -> em.remove(product));
+        executeInsideTransactionEMPerClass("ProductDao.deleteEMPerClass", em ->
+                //the product is still managed unless it was saved by another thread or the context was cleared
+                //since - then a reference is enough to remove it
+                em.remove(em.contains(product) ? product : em.getReference(Product.class, product.getId())));
     }
+
     //EntityManager per class
     @Override
     public void saveEMPerClass(Product product) {
-        executeInsideTransactionEMPerClass(em -> em.persist(product));
+        executeInsideTransactionEMPerClass("ProductDao.saveEMPerClass", em -> em.persist(product));
     }
 }
@@ -0,0 +1,147 @@
+package org.jhd.dao.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.jhd.dao.StatelessDao;
+import org.jhd.entity.Product;
+import org.jhd.metrics.DataAccessMetrics;
+import org.jhd.persistence.StatelessInserts;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+//ProductDao.save/delete open an EntityManager for every call: a persistence context, an entity entry and a
+//snapshot per entity, a flush that dirty checks them and the close that throws it all away. For a price event that
+//is more CPU than the UPDATE itself. A StatelessSession sends the statement and nothing else.
+//What is given up:
+//  - no dirty checking: update() writes every column (@DynamicUpdate needs a snapshot), updatePrice() only the price
+//  - no cascades, no interceptors/listeners - MetricsSessionEventListener does not see these transactions, the
+//    per-method latency is still recorded under "StatelessProductDao.<method>"
+//  - the second-level cache is bypassed - the entries of the updated/deleted products are evicted after commit so
+//    ProductDao does not serve them stale. Hibernate invalidates the cached queries on product after the UPDATE/
+//    DELETE statements of updatePrice()/deleteById() but not after insert()/update()/delete() of an entity, the
+//    query regions are evicted for those (any write to product would invalidate them anyway)
+public class StatelessProductDao implements StatelessDao<Product> {
+    private final SessionFactory sessionFactory;
+    private final int batchSize;
+    private final DataAccessMetrics metrics = DataAccessMetrics.global();
+
+    public StatelessProductDao(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.batchSize = DaoProperties.jdbcBatchSize(entityManagerFactory);
+    }
+
+    @Override
+    public Optional<Product> get(long id) {
+        return executeInsideTransaction("StatelessProductDao.get",
+                session -> Optional.ofNullable(session.get(Product.class, id)));
+    }
+
+    @Override
+    public void insert(Product product) {
+        executeInsideTransaction("StatelessProductDao.insert", session -> StatelessInserts.insert(session, product));
+        evictQueries();
+    }
+
+    //the ids are assigned to the products once the INSERTs are sent - with GenerationType.IDENTITY that is one
+    //statement per product, see META-INF/orm-pooled-ids.xml
+    @Override
+    public void insertAll(Collection<Product> products) {
+        executeInsideTransaction("StatelessProductDao.insertAll", session -> {
+            session.setJdbcBatchSize(batchSize);
+            for (Product product : products) {
+                StatelessInserts.insert(session, product);
+            }
+            return null;
+        });
+        evictQueries();
+    }
+
+    @Override
+    public void update(Product product) {
+        executeInsideTransaction("StatelessProductDao.update", session -> {
+            session.update(product);
+            return null;
+        });
+        evict(product.getId());
+        evictQueries();
+    }
+
+    @Override
+    public void updateAll(Collection<Product> products) {
+        executeInsideTransaction("StatelessProductDao.updateAll", session -> {
+            session.setJdbcBatchSize(batchSize);
+            for (Product product : products) {
+                session.update(product);
+            }
+            return null;
+        });
+        products.forEach(product -> evict(product.getId()));
+        evictQueries();
+    }
+
+    @Override
+    public int updatePrice(long id, double newPrice) {
+        int rowCount = executeInsideTransaction("StatelessProductDao.updatePrice", session -> session
+                .createMutationQuery("UPDATE VERSIONED Product p SET p.price = :price WHERE p.id = :id")
+                .setParameter("price", newPrice)
+                .setParameter("id", id)
+                .executeUpdate());
+        evict(id);
+        return rowCount;
+    }
+
+    //only the id of the product is used, there is no SELECT before the DELETE
+    @Override
+    public void delete(Product product) {
+        executeInsideTransaction("StatelessProductDao.delete", session -> {
+            session.delete(product);
+            return null;
+        });
+        evict(product.getId());
+        evictQueries();
+    }
+
+    @Override
+    public int deleteById(long id) {
+        int rowCount = executeInsideTransaction("StatelessProductDao.deleteById", session -> session
+                .createMutationQuery("DELETE FROM Product p WHERE p.id = :id")
+                .setParameter("id", id)
+                .executeUpdate());
+        evict(id);
+        return rowCount;
+    }
+
+    private void evict(Long id) {
+        if (id != null) {
+            sessionFactory.getCache().evictEntityData(Product.class, id);
+        }
+    }
+
+    private void evictQueries() {
+        sessionFactory.getCache().evictQueryRegions();
+    }
+
+    //StatelessSession per transaction - it holds a JDBC connection only while the transaction runs
+    private <R> R executeInsideTransaction(String name, Function<StatelessSession, R> operation) {
+        return metrics.time(name, () -> {
+            try (StatelessSession session = sessionFactory.openStatelessSession()) {
+                Transaction tx = session.beginTransaction();
+                try {
+                    R result = operation.apply(session);
+                    //also executes the pending JDBC batch
+                    tx.commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (tx.isActive()) {
+                        tx.rollback();
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+}
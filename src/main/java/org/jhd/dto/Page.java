@@ -0,0 +1,11 @@
+package org.jhd.dto;
+
+import java.util.List;
+
+//one page of a paginated read. nextAfterId is the id of the last element - pass it as afterId to get the next
+//page with keyset pagination - and is null when the page is empty
+public record Page<T>(
+        List<T> content,
+        boolean hasNext,
+        Long nextAfterId) {
+}
@@ -0,0 +1,25 @@
+package org.jhd.dto;
+
+import org.jhd.entity.Product;
+
+//immutable copy of a product, safe to share between threads and callers (e.g. in a cache). Callers get a new
+//detached Product from toProduct() so they can never modify the cached state. The version goes with it: an update
+//of a product read from the cache fails if the row was changed since the snapshot was taken
+public record ProductSnapshot(
+        Long id,
+        String name,
+        Double price,
+        Long version) {
+
+    public static ProductSnapshot from(Product product) {
+        return new ProductSnapshot(product.getId(), product.getName(), product.getPrice(), product.getVersion());
+    }
+
+    public Product toProduct() {
+        Product product = new Product(name);
+        product.setId(id);
+        product.setPrice(price);
+        product.setVersion(version);
+        return product;
+    }
+}
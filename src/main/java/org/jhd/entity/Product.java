@@ -1,12 +1,27 @@
 package org.jhd.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Objects;
 
 @Entity
 @Table(name = "product")
+//second-level cache, read-write: a concurrent update locks the entry so no stale entity is served
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+//UPDATE only the columns that changed instead of all of them
+@DynamicUpdate
+//named queries are parsed and checked when the EntityManagerFactory starts - a broken query fails the deployment,
+//not the first request that uses it - and the interpretation is cached from then on (see Warmup)
+@NamedQuery(name = Product.FIND_ALL, query = "SELECT p FROM Product p")
+@NamedQuery(name = Product.FIND_BY_IDS, query = "SELECT p FROM Product p WHERE p.id IN :ids")
 public class Product {
+    public static final String FIND_ALL = "Product.findAll";
+    public static final String FIND_BY_IDS = "Product.findByIds";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "product_id")
@@ -18,6 +33,13 @@ public class Product {
     @Column(name = "product_price")
     private Double price;
 
+    //optimistic locking - every UPDATE/DELETE is "... WHERE id = ? AND version = ?" and increments it. 0 rows
+    //matched means another transaction changed the row since it was read: OptimisticLockException instead of
+    //silently overwriting its change (last write wins)
+    @Version
+    @Column(name = "product_version", nullable = false)
+    private Long version;
+
     public Product() {
     }
 
@@ -50,12 +72,22 @@ public class Product {
         this.price = price;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    //the version the caller read - ProductDao.updateWith* fail if the row has changed since
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Product{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", price=" + price +
+                ", version=" + version +
                 '}';
     }
 
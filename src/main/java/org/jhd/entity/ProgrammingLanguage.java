@@ -1,12 +1,27 @@
 package org.jhd.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.jpa.AvailableHints;
 
 import java.util.Objects;
 
 @Entity
 @Table(name = "programming_language")
+//second-level cache, read-write: a concurrent update locks the entry so no stale entity is served
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "programming_language")
+//UPDATE only the columns that changed instead of all of them
+@DynamicUpdate
+//small reference table - the result of the query is cached
+@NamedQuery(name = ProgrammingLanguage.FIND_RATED_ABOVE,
+        query = "SELECT pl FROM ProgrammingLanguage pl WHERE pl.rating > :rating",
+        hints = @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
 public class ProgrammingLanguage {
+    public static final String FIND_RATED_ABOVE = "ProgrammingLanguage.findRatedAbove";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "pl_id")
@@ -18,6 +33,11 @@ public class ProgrammingLanguage {
     @Column(name = "pl_rating")
     private Integer rating;
 
+    //optimistic locking, as Product
+    @Version
+    @Column(name = "pl_version", nullable = false)
+    private Long version;
+
     public ProgrammingLanguage() {
     }
 
@@ -50,12 +70,21 @@ public class ProgrammingLanguage {
         this.rating = rating;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "ProgrammingLanguage{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", rating=" + rating +
+                ", version=" + version +
                 '}';
     }
 
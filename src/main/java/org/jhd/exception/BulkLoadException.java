@@ -0,0 +1,8 @@
+package org.jhd.exception;
+
+//a bulk load stopped - the partitions committed before are kept (and checkpointed), run it again to resume
+public class BulkLoadException extends RuntimeException {
+    public BulkLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
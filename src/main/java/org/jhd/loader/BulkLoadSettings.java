@@ -0,0 +1,29 @@
+package org.jhd.loader;
+
+import java.nio.file.Path;
+
+//workers - threads inserting in parallel, each with its own StatelessSession and connection: at most the size of
+//the connection pool, and little gain past the cores of the database
+//partitionSize - records per transaction: the unit of commit and of resume
+//batchSize - inserts per JDBC batch
+//queueCapacity - partitions read ahead of the workers. When the queue is full the reader waits, so memory holds at
+//most (queueCapacity + workers) * partitionSize records whatever the size of the input
+//checkpointFile - committed partitions, null to load without resume
+public record BulkLoadSettings(
+        int workers,
+        int partitionSize,
+        int batchSize,
+        int queueCapacity,
+        Path checkpointFile) {
+
+    public BulkLoadSettings {
+        if (workers < 1 || partitionSize < 1 || batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("workers, partitionSize, batchSize and queueCapacity must be > 0");
+        }
+    }
+
+    public static BulkLoadSettings defaults(Path checkpointFile) {
+        return new BulkLoadSettings(Math.max(2, Runtime.getRuntime().availableProcessors()), 10_000, 50, 4,
+                checkpointFile);
+    }
+}
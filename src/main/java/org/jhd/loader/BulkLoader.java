@@ -0,0 +1,240 @@
+package org.jhd.loader;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.jhd.exception.BulkLoadException;
+import org.jhd.metrics.DataAccessMetrics;
+import org.jhd.persistence.StatelessInserts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//Loads a CSV / JSON-lines file of any size into the table of T.
+//Persisting everything in one transaction through an EntityManager keeps every entity (and its snapshot) in the
+//persistence context and one transaction open for the whole file, on one thread. Here:
+//  - the calling thread reads the file one record at a time and cuts it into partitions of partitionSize records
+//  - a fixed pool of workers takes the partitions from a bounded queue - a reader faster than the database waits
+//    for a free slot (backpressure) instead of filling the heap
+//  - each worker inserts a partition through its own StatelessSession (no persistence context, no dirty checking,
+//    no second-level cache) in JDBC batches of batchSize, and commits it: partitionSize rows per transaction
+//  - committed partitions are recorded in the checkpoint file, a load that failed or was stopped skips them when
+//    it is run again
+//JDBC batching needs ids that are not generated by the INSERT - with GenerationType.IDENTITY every insert is sent
+//on its own, load with the META-INF/orm-pooled-ids.xml mapping (or ids from the file) for millions of rows.
+//Partitions are committed out of order and independently: a failed load leaves the committed ones in the table.
+//  new BulkLoader<>(emf, fields -> new ProgrammingLanguage(fields.get("name"), Integer.valueOf(fields.get("rating"))),
+//          BulkLoadSettings.defaults(Path.of("languages.checkpoint"))).load(Path.of("languages.csv"));
+public class BulkLoader<T> {
+    private final SessionFactory sessionFactory;
+    private final Function<Map<String, String>, T> mapper;
+    private final BulkLoadSettings settings;
+    private final DataAccessMetrics metrics = DataAccessMetrics.global();
+
+    //mapper - creates the entity of one record, field name -> value
+    public BulkLoader(EntityManagerFactory entityManagerFactory, Function<Map<String, String>, T> mapper,
+                      BulkLoadSettings settings) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.mapper = mapper;
+        this.settings = settings;
+    }
+
+    //format from the file extension
+    public LoadResult load(Path input) {
+        return load(input, InputFormat.of(input.getFileName().toString()));
+    }
+
+    public LoadResult load(Path input, InputFormat format) {
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return load(reader, format);
+        } catch (IOException e) {
+            throw new BulkLoadException("Could not read " + input, e);
+        }
+    }
+
+    public LoadResult load(BufferedReader input, InputFormat format) {
+        long start = System.nanoTime();
+        Checkpoint checkpoint = settings.checkpointFile() == null
+                ? null
+                : Checkpoint.open(settings.checkpointFile(), settings.partitionSize());
+        Load load = new Load(checkpoint);
+        ExecutorService workers = Executors.newFixedThreadPool(settings.workers(), runnable -> {
+            Thread thread = new Thread(runnable, "bulk-loader-" + load.workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < settings.workers(); i++) {
+            workers.execute(load::work);
+        }
+        try {
+            read(input, format, load);
+        } catch (IOException | RuntimeException e) {
+            load.fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+            throw new BulkLoadException("Bulk load interrupted", e);
+        } finally {
+            //the workers finish the partitions already queued
+            load.endOfInput();
+            workers.shutdown();
+        }
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                //partitions still being inserted
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+            throw new BulkLoadException("Bulk load interrupted", e);
+        }
+        if (load.failure.get() != null) {
+            throw new BulkLoadException("Bulk load stopped after " + load.loaded.sum() + " records"
+                    + (checkpoint == null ? "" : ", run it again to resume from " + settings.checkpointFile()),
+                    load.failure.get());
+        }
+        return new LoadResult(load.loaded.sum(), load.partitions, load.skippedPartitions,
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void read(BufferedReader input, InputFormat format, Load load) throws IOException,
+            InterruptedException {
+        RecordReader reader = format.reader(input);
+        long partitionNumber = 0;
+        List<T> records = new ArrayList<>(settings.partitionSize());
+        int recordsInPartition = 0;
+        Map<String, String> record;
+        while (load.failure.get() == null && (record = reader.next()) != null) {
+            //records of a committed partition are read but not mapped
+            if (load.checkpoint == null || !load.checkpoint.isCommitted(partitionNumber)) {
+                records.add(mapper.apply(record));
+            }
+            if (++recordsInPartition == settings.partitionSize()) {
+                load.submit(new Partition<>(partitionNumber++, records));
+                records = new ArrayList<>(settings.partitionSize());
+                recordsInPartition = 0;
+            }
+        }
+        if (recordsInPartition > 0 && load.failure.get() == null) {
+            load.submit(new Partition<>(partitionNumber, records));
+        }
+    }
+
+    private void insert(Partition<T> partition) {
+        long start = System.nanoTime();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.setJdbcBatchSize(settings.batchSize());
+            Transaction tx = session.beginTransaction();
+            try {
+                for (T entity : partition.records()) {
+                    StatelessInserts.insert(session, entity);
+                }
+                //executes the last, partial batch
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+        metrics.record("BulkLoader.partition", System.nanoTime() - start);
+    }
+
+    private record Partition<T>(long number, List<T> records) {
+    }
+
+    //state of one load() call, shared by the reader and the workers
+    private final class Load {
+        private final Checkpoint checkpoint;
+        private final BlockingQueue<Partition<T>> queue = new ArrayBlockingQueue<>(settings.queueCapacity());
+        //one per worker, tells it the input is over
+        private final Partition<T> endOfInput = new Partition<>(-1, List.of());
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicInteger workerCount = new AtomicInteger();
+        //workers that have not returned yet - counted from the start, before the pool runs them
+        private final AtomicInteger runningWorkers = new AtomicInteger(settings.workers());
+        private final LongAdder loaded = new LongAdder();
+        //written by the reader thread only
+        private long partitions;
+        private long skippedPartitions;
+
+        private Load(Checkpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        private void submit(Partition<T> partition) throws InterruptedException {
+            partitions++;
+            if (checkpoint != null && checkpoint.isCommitted(partition.number())) {
+                skippedPartitions++;
+                return;
+            }
+            //blocks while the workers are behind, gives up if one of them failed
+            while (failure.get() == null && !queue.offer(partition, 100, TimeUnit.MILLISECONDS)) {
+                //queue full
+            }
+        }
+
+        private void endOfInput() {
+            for (int i = 0; i < settings.workers(); i++) {
+                try {
+                    //a full queue nobody takes from any more (the workers died on an Error) would block forever
+                    while (runningWorkers.get() > 0 && !queue.offer(endOfInput, 100, TimeUnit.MILLISECONDS)) {
+                        //queue full
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+
+        private void work() {
+            try {
+                Partition<T> partition;
+                //after a failure the reader stops, the partitions already queued are still loaded - they are valid
+                //and it is less to do on resume
+                while ((partition = queue.take()) != endOfInput) {
+                    try {
+                        insert(partition);
+                        if (checkpoint != null) {
+                            checkpoint.markCommitted(partition.number());
+                        }
+                        loaded.add(partition.records().size());
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Error e) {
+                //stops the reader, the load fails with it
+                fail(e);
+                throw e;
+            } finally {
+                runningWorkers.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.jhd.loader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//Numbers of the partitions already committed, one per line after a partition-size header. A partition is
+//appended (and synced to disk) right after its transaction commits, so a load that is stopped resumes with the
+//first partition that was not committed. Partition numbers only identify the same records again when the input
+//and the partition size are the same - the header guards the latter.
+//A crash between a commit and its checkpoint line loads that partition a second time on resume.
+class Checkpoint {
+    private static final String HEADER = "partition-size=";
+
+    private final Path file;
+    private final Set<Long> committed;
+
+    private Checkpoint(Path file, Set<Long> committed) {
+        this.file = file;
+        this.committed = committed;
+    }
+
+    static Checkpoint open(Path file, int partitionSize) {
+        try {
+            if (!Files.exists(file)) {
+                Files.writeString(file, HEADER + partitionSize + System.lineSeparator(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.SYNC);
+                return new Checkpoint(file, new HashSet<>());
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER + partitionSize)) {
+                throw new IllegalStateException("Checkpoint " + file + " was written with another partition size ("
+                        + (lines.isEmpty() ? "none" : lines.get(0)) + "), delete it to load from the start");
+            }
+            Set<Long> committed = new HashSet<>();
+            lines.stream().skip(1).filter(line -> !line.isBlank()).map(Long::valueOf).forEach(committed::add);
+            return new Checkpoint(file, committed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read checkpoint " + file, e);
+        }
+    }
+
+    //read before the workers start, committed is only written by markCommitted() after that
+    synchronized boolean isCommitted(long partition) {
+        return committed.contains(partition);
+    }
+
+    synchronized int committedCount() {
+        return committed.size();
+    }
+
+    synchronized void markCommitted(long partition) {
+        try {
+            Files.writeString(file, partition + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            committed.add(partition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + file, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.jhd.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//RFC 4180 subset: comma separator, header line, quoted values with "" as an escaped quote. A quoted value cannot
+//span lines - reference data exports don't have any and it keeps reading line by line
+class CsvRecordReader implements RecordReader {
+    private final BufferedReader input;
+    private List<String> header;
+    private long lineNumber;
+
+    CsvRecordReader(BufferedReader input) {
+        this.input = input;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (header == null) {
+            String headerLine = readLine();
+            if (headerLine == null) {
+                return null;
+            }
+            header = split(headerLine);
+        }
+        String line;
+        do {
+            line = readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        List<String> values = split(line);
+        if (values.size() != header.size()) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has " + values.size() + " values, the header "
+                    + header.size());
+        }
+        Map<String, String> record = new HashMap<>(header.size() * 2);
+        for (int i = 0; i < header.size(); i++) {
+            record.put(header.get(i), values.get(i).isEmpty() ? null : values.get(i));
+        }
+        return record;
+    }
+
+    private String readLine() throws IOException {
+        lineNumber++;
+        return input.readLine();
+    }
+
+    private List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has an unterminated quoted value");
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+}
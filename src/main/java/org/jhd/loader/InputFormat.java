@@ -0,0 +1,34 @@
+package org.jhd.loader;
+
+import java.io.BufferedReader;
+
+//CSV: the first line holds the column names, values may be quoted ("a, b" and "" for a quote)
+//JSON_LINES: one flat JSON object per line, {"name": "Java", "rating": 9}
+public enum InputFormat {
+    CSV {
+        @Override
+        RecordReader reader(BufferedReader input) {
+            return new CsvRecordReader(input);
+        }
+    },
+    JSON_LINES {
+        @Override
+        RecordReader reader(BufferedReader input) {
+            return new JsonLinesRecordReader(input);
+        }
+    };
+
+    abstract RecordReader reader(BufferedReader input);
+
+    //by file extension: .csv, .jsonl/.ndjson
+    public static InputFormat of(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        if (lowerCase.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lowerCase.endsWith(".jsonl") || lowerCase.endsWith(".ndjson")) {
+            return JSON_LINES;
+        }
+        throw new IllegalArgumentException("Unknown input format of " + fileName + ", expected .csv or .jsonl");
+    }
+}
@@ -0,0 +1,145 @@
+package org.jhd.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+//one flat JSON object per line - string, number, boolean and null values, no nested object or array. Numbers
+//and booleans are returned as their text, the mapper converts them like CSV values
+class JsonLinesRecordReader implements RecordReader {
+    private final BufferedReader input;
+    private long lineNumber;
+
+    //position in the line being parsed
+    private String line;
+    private int position;
+
+    JsonLinesRecordReader(BufferedReader input) {
+        this.input = input;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        do {
+            line = input.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        position = 0;
+        Map<String, String> record = parseObject();
+        skipWhitespace();
+        if (position < line.length()) {
+            throw error("unexpected content after the object");
+        }
+        return record;
+    }
+
+    private Map<String, String> parseObject() {
+        Map<String, String> record = new HashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return record;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = parseString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            record.put(name, parseValue());
+            skipWhitespace();
+            char c = nextChar();
+            if (c == '}') {
+                return record;
+            }
+            if (c != ',') {
+                throw error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private String parseValue() {
+        char c = peek();
+        if (c == '"') {
+            return parseString();
+        }
+        if (c == '{' || c == '[') {
+            throw error("nested objects and arrays are not supported");
+        }
+        int start = position;
+        while (position < line.length() && ",} \t".indexOf(line.charAt(position)) < 0) {
+            position++;
+        }
+        String literal = line.substring(start, position);
+        if (literal.isEmpty()) {
+            throw error("expected a value");
+        }
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String parseString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = nextChar();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = nextChar();
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    if (position + 4 > line.length()) {
+                        throw error("truncated unicode escape");
+                    }
+                    value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                    position += 4;
+                }
+                default -> throw error("invalid escape \\" + escaped);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (nextChar() != expected) {
+            throw error("expected '" + expected + "'");
+        }
+    }
+
+    private char peek() {
+        if (position >= line.length()) {
+            throw error("unexpected end of line");
+        }
+        return line.charAt(position);
+    }
+
+    private char nextChar() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + lineNumber + ", column " + (position + 1) + ": " + message);
+    }
+}
@@ -0,0 +1,15 @@
+package org.jhd.loader;
+
+import java.time.Duration;
+
+//loaded - records inserted by this run, skippedPartitions - committed by a previous run according to the checkpoint
+public record LoadResult(
+        long loaded,
+        long partitions,
+        long skippedPartitions,
+        Duration elapsed) {
+
+    public double recordsPerSecond() {
+        return elapsed.isZero() ? 0 : loaded * 1_000_000_000.0 / elapsed.toNanos();
+    }
+}
@@ -0,0 +1,10 @@
+package org.jhd.loader;
+
+import java.io.IOException;
+import java.util.Map;
+
+//reads one record at a time - the input is never held in memory as a whole
+interface RecordReader {
+    //field name -> value (null for a JSON null or an empty CSV value), null at the end of the input
+    Map<String, String> next() throws IOException;
+}
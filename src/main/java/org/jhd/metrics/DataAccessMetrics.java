@@ -0,0 +1,194 @@
+package org.jhd.metrics;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+//What the data access layer is doing, without hibernate.show_sql: formatting and printing every statement to
+//stdout serialises the threads on System.out and costs more than most of the queries it prints.
+//  - a latency histogram per DAO / JpaService operation (time(...))
+//  - transactions, rollbacks and statements per transaction, JDBC statement and connection acquisition time,
+//    entities flushed - fed by MetricsSessionEventListener
+//  - a slow-query log and an N+1 detector - MetricsSessionEventListener with the SQL of SqlStatementInspector
+//  - entities loaded/inserted/updated/deleted - read from Hibernate Statistics (hibernate.generate_statistics)
+//  - transactions run again after an optimistic lock conflict - EntityManagerLifecycle.executeInTransactionWithRetry
+//The listener and the inspector are registered with the persistence unit properties
+//  hibernate.session.events.auto=org.jhd.metrics.MetricsSessionEventListener
+//  hibernate.session_factory.statement_inspector=org.jhd.metrics.SqlStatementInspector
+//and configured with
+//  jhd.metrics.slow-query-threshold-ms=500
+//  jhd.metrics.n-plus-one-threshold=10
+//Hibernate creates the listeners itself (one per session) so the metrics are process wide, and so are the
+//thresholds: configure(...) is called once with the properties of the main unit (Application, JpaService for
+//DEFAULT_PERSISTENCE_UNIT), the other units do not change them.
+public final class DataAccessMetrics {
+    public static final String SLOW_QUERY_THRESHOLD = "jhd.metrics.slow-query-threshold-ms";
+    public static final String N_PLUS_ONE_THRESHOLD = "jhd.metrics.n-plus-one-threshold";
+
+    private static final Duration DEFAULT_SLOW_QUERY_THRESHOLD = Duration.ofMillis(500);
+    private static final int DEFAULT_N_PLUS_ONE_THRESHOLD = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(DataAccessMetrics.class.getName());
+    private static final DataAccessMetrics GLOBAL = new DataAccessMetrics();
+
+    private final ConcurrentMap<String, Histogram> operations = new ConcurrentHashMap<>();
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final Histogram statementsPerTransaction = new Histogram();
+    private final Histogram statementNanos = new Histogram();
+    private final Histogram connectionAcquisitionNanos = new Histogram();
+    private final LongAdder entitiesFlushed = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+    private final LongAdder nPlusOneWarnings = new LongAdder();
+    private final LongAdder transactionRetries = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+
+    private volatile long slowQueryThresholdNanos = DEFAULT_SLOW_QUERY_THRESHOLD.toNanos();
+    private volatile int nPlusOneThreshold = DEFAULT_N_PLUS_ONE_THRESHOLD;
+
+    public static DataAccessMetrics global() {
+        return GLOBAL;
+    }
+
+    //only the jhd.metrics.* properties present are applied, the others keep their value
+    public void configure(Map<String, Object> properties) {
+        Object slowQueryThreshold = properties.get(SLOW_QUERY_THRESHOLD);
+        if (slowQueryThreshold != null) {
+            setSlowQueryThreshold(Duration.ofMillis(Long.parseLong(slowQueryThreshold.toString())));
+        }
+        Object nPlusOne = properties.get(N_PLUS_ONE_THRESHOLD);
+        if (nPlusOne != null) {
+            setNPlusOneThreshold(Integer.parseInt(nPlusOne.toString()));
+        }
+    }
+
+    public void setSlowQueryThreshold(Duration threshold) {
+        this.slowQueryThresholdNanos = threshold.toNanos();
+    }
+
+    //a transaction issuing more than threshold times the same SELECT is reported
+    public void setNPlusOneThreshold(int threshold) {
+        this.nPlusOneThreshold = threshold;
+    }
+
+    int getNPlusOneThreshold() {
+        return nPlusOneThreshold;
+    }
+
+    public <R> R time(String operation, Supplier<R> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(operation, System.nanoTime() - start);
+        }
+    }
+
+    public void time(String operation, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(operation, System.nanoTime() - start);
+        }
+    }
+
+    //for operations that do not end in the method that starts them, e.g. a Stream closed by the caller
+    public void record(String operation, long nanos) {
+        operations.computeIfAbsent(operation, name -> new Histogram()).record(nanos);
+    }
+
+    void transactionCompleted(boolean successful, int statements) {
+        transactions.increment();
+        if (!successful) {
+            rollbacks.increment();
+        }
+        statementsPerTransaction.record(statements);
+    }
+
+    void statementExecuted(long nanos, String sql) {
+        statementNanos.record(nanos);
+        if (nanos > slowQueryThresholdNanos) {
+            slowQueries.increment();
+            LOGGER.warning("Slow query (" + nanos / 1_000_000 + " ms): " + (sql == null ? "<unknown>" : sql));
+        }
+    }
+
+    void connectionAcquired(long nanos) {
+        connectionAcquisitionNanos.record(nanos);
+    }
+
+    void entitiesFlushed(int count) {
+        entitiesFlushed.add(count);
+    }
+
+    void nPlusOneSuspected(String sql, int executions) {
+        nPlusOneWarnings.increment();
+        LOGGER.warning("Possible N+1: the same select was executed " + executions
+                + " times in one transaction, fetch the association with a join or load the ids in one query: "
+                + sql);
+    }
+
+    //an optimistic lock conflict, the transaction is run again
+    public void transactionRetried() {
+        transactionRetries.increment();
+    }
+
+    //an optimistic lock conflict on the last attempt, the exception goes to the caller
+    public void retriesExhausted() {
+        retriesExhausted.increment();
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, HistogramSnapshot> operationSnapshots = new TreeMap<>();
+        operations.forEach((name, histogram) -> operationSnapshots.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(
+                Map.copyOf(operationSnapshots),
+                transactions.sum(),
+                rollbacks.sum(),
+                statementsPerTransaction.snapshot(),
+                statementNanos.snapshot(),
+                connectionAcquisitionNanos.snapshot(),
+                entitiesFlushed.sum(),
+                slowQueries.sum(),
+                nPlusOneWarnings.sum(),
+                transactionRetries.sum(),
+                retriesExhausted.sum());
+    }
+
+    //all zero unless the persistence unit sets hibernate.generate_statistics=true
+    public static EntityStatistics entityStatistics(EntityManagerFactory entityManagerFactory) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return new EntityStatistics(
+                statistics.getEntityLoadCount(),
+                statistics.getEntityFetchCount(),
+                statistics.getEntityInsertCount(),
+                statistics.getEntityUpdateCount(),
+                statistics.getEntityDeleteCount(),
+                statistics.getFlushCount());
+    }
+
+    //starts every counter and histogram from zero again, the thresholds are kept
+    public void reset() {
+        operations.clear();
+        transactions.reset();
+        rollbacks.reset();
+        entitiesFlushed.reset();
+        slowQueries.reset();
+        nPlusOneWarnings.reset();
+        transactionRetries.reset();
+        retriesExhausted.reset();
+        statementsPerTransaction.reset();
+        statementNanos.reset();
+        connectionAcquisitionNanos.reset();
+    }
+}
@@ -0,0 +1,12 @@
+package org.jhd.metrics;
+
+//Hibernate Statistics of one EntityManagerFactory since it was created - loaded = read from a query or find(),
+//fetched = loaded lazily through an association or a proxy
+public record EntityStatistics(
+        long loaded,
+        long fetched,
+        long inserted,
+        long updated,
+        long deleted,
+        long flushes) {
+}
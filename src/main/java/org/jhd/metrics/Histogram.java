@@ -0,0 +1,89 @@
+package org.jhd.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free histogram of positive long values (nanoseconds, statement counts...) cheap enough for the hot path:
+//record() is a few atomic increments, no allocation and no lock.
+//Values are bucketed by their highest bit and the SUB_BUCKET_BITS bits after it - every bucket is at most 12.5%
+//wide relative to the values it holds and 64 x 8 buckets cover the whole long range. Values below 8 are exact.
+//Percentiles are reported as the upper bound of their bucket (never above the recorded max).
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    //negative values are recorded as 0
+    public void record(long value) {
+        long positive = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(positive));
+        count.increment();
+        sum.add(positive);
+        if (positive > max.get()) {
+            max.accumulateAndGet(positive, Math::max);
+        }
+    }
+
+    //values recorded concurrently with a reset may survive it - meant for tests and between benchmark runs
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    //not an atomic view: values recorded while the snapshot is taken may be partly included
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long maxValue = max.get();
+        return new HistogramSnapshot(total, sum.sum(), maxValue,
+                percentile(counts, total, 50, maxValue),
+                percentile(counts, total, 95, maxValue),
+                percentile(counts, total, 99, maxValue));
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long maxValue) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,15 @@
+package org.jhd.metrics;
+
+//values are in the unit recorded - nanoseconds for the timers, statements for statementsPerTransaction
+public record HistogramSnapshot(
+        long count,
+        long sum,
+        long max,
+        long p50,
+        long p95,
+        long p99) {
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,91 @@
+package org.jhd.metrics;
+
+import org.hibernate.SessionEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Hibernate creates one listener per session (hibernate.session.events.auto) and calls it on the thread of the
+//session, so the state below needs no synchronisation. Everything is reported to DataAccessMetrics.global().
+//A transaction is counted with the number of JDBC executions it ran when it completes, and the SELECTs are
+//counted by SQL: Hibernate binds every value as a parameter, so the same SQL text executed more than the
+//N+1 threshold in one transaction is a loop loading rows one at a time (lazy associations, find() in a loop).
+public class MetricsSessionEventListener implements SessionEventListener {
+    private final transient DataAccessMetrics metrics = DataAccessMetrics.global();
+
+    private long connectionAcquisitionStart;
+    private long executionStart;
+    //the SQL of the execution in progress, null when unknown
+    private String executingSql;
+    private int statementsInTransaction;
+    //created on the first SELECT - most sessions never need it
+    private Map<String, Integer> selectsInTransaction;
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        connectionAcquisitionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        metrics.connectionAcquired(System.nanoTime() - connectionAcquisitionStart);
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementsInTransaction++;
+        executingSql = SqlStatementInspector.currentStatement();
+        countSelect(executingSql);
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        executed();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        statementsInTransaction++;
+        executingSql = SqlStatementInspector.currentStatement();
+        executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        executed();
+    }
+
+    private void executed() {
+        metrics.statementExecuted(System.nanoTime() - executionStart, executingSql);
+        executingSql = null;
+        SqlStatementInspector.clear();
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        metrics.entitiesFlushed(numberOfEntities);
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        metrics.transactionCompleted(successful, statementsInTransaction);
+        statementsInTransaction = 0;
+        selectsInTransaction = null;
+        SqlStatementInspector.clear();
+    }
+
+    private void countSelect(String sql) {
+        if (sql == null || !sql.regionMatches(true, 0, "select", 0, 6)) {
+            return;
+        }
+        if (selectsInTransaction == null) {
+            selectsInTransaction = new HashMap<>();
+        }
+        int executions = selectsInTransaction.merge(sql, 1, Integer::sum);
+        //reported once per SQL and transaction
+        if (executions == metrics.getNPlusOneThreshold() + 1) {
+            metrics.nPlusOneSuspected(sql, executions);
+        }
+    }
+}
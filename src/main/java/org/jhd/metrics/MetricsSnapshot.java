@@ -0,0 +1,29 @@
+package org.jhd.metrics;
+
+import java.util.Map;
+
+//operations: one histogram per timed operation (e.g. ProductDao.get), in nanoseconds.
+//statementsPerTransaction counts JDBC executions (a JDBC batch counts once), statementNanos and
+//connectionAcquisitionNanos time every one of them. transactionRetries counts the attempts that failed on an optimistic
+//lock conflict and were run again, retriesExhausted the transactions that still failed on their last attempt
+public record MetricsSnapshot(
+        Map<String, HistogramSnapshot> operations,
+        long transactions,
+        long rollbacks,
+        HistogramSnapshot statementsPerTransaction,
+        HistogramSnapshot statementNanos,
+        HistogramSnapshot connectionAcquisitionNanos,
+        long entitiesFlushed,
+        long slowQueries,
+        long nPlusOneWarnings,
+        long transactionRetries,
+        long retriesExhausted) {
+
+    public HistogramSnapshot operation(String name) {
+        HistogramSnapshot snapshot = operations.get(name);
+        if (snapshot == null) {
+            throw new IllegalArgumentException("No operation named " + name + " was timed");
+        }
+        return snapshot;
+    }
+}
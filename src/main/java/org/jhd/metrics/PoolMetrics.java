@@ -0,0 +1,79 @@
+package org.jhd.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//HikariCP metrics tracker: how long threads wait for a connection, how long they hold it and how many gave up
+//(connectionTimeout). Plugged in programmatically (HikariConfig.setMetricsTrackerFactory(new PoolMetrics())) or,
+//for a pool created by Hibernate, with
+//  hibernate.hikari.metricsTrackerFactory=org.jhd.metrics.PoolMetrics
+//in which case Hikari instantiates it itself - the trackers are therefore kept per pool name, in a static map.
+//Wait time is what a caller sees of the pool: a p99 close to connectionTimeout means the pool is too small or
+//connections are held too long (see connectionUsageMillis).
+public class PoolMetrics implements MetricsTrackerFactory {
+    private static final ConcurrentMap<String, Tracker> TRACKERS = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker tracker = new Tracker(poolName);
+        TRACKERS.put(poolName, tracker);
+        return tracker;
+    }
+
+    //live active/idle counts from the pool MXBean with the histograms of its tracker - the histograms are empty
+    //when the pool was not created with PoolMetrics
+    public static PoolStatistics statistics(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            throw new IllegalStateException("Pool " + dataSource.getPoolName() + " is not started or already closed");
+        }
+        Tracker tracker = TRACKERS.getOrDefault(dataSource.getPoolName(), new Tracker(dataSource.getPoolName()));
+        return new PoolStatistics(
+                pool.getActiveConnections(),
+                pool.getIdleConnections(),
+                pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(),
+                tracker.connectionWaitNanos.snapshot(),
+                tracker.connectionUsageMillis.snapshot(),
+                tracker.connectionTimeouts.sum());
+    }
+
+    private static final class Tracker implements IMetricsTracker {
+        private final String poolName;
+        private final Histogram connectionWaitNanos = new Histogram();
+        private final Histogram connectionUsageMillis = new Histogram();
+        private final LongAdder connectionTimeouts = new LongAdder();
+
+        private Tracker(String poolName) {
+            this.poolName = poolName;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            connectionWaitNanos.record(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            connectionUsageMillis.record(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            connectionTimeouts.increment();
+        }
+
+        //the pool is shut down
+        @Override
+        public void close() {
+            TRACKERS.remove(poolName, this);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.jhd.metrics;
+
+//active = borrowed by a thread, idle = in the pool, total = active + idle. The histograms cover the whole life of
+//the pool
+public record PoolStatistics(
+        int activeConnections,
+        int idleConnections,
+        int totalConnections,
+        int threadsAwaitingConnection,
+        HistogramSnapshot connectionWaitNanos,
+        HistogramSnapshot connectionUsageMillis,
+        long connectionTimeouts) {
+}
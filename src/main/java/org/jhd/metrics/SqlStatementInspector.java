@@ -0,0 +1,29 @@
+package org.jhd.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+//Hibernate hands every SQL string to the StatementInspector right before it prepares the statement, on the thread
+//of the session. The last one is kept per thread so MetricsSessionEventListener knows which SQL it is timing -
+//the session events themselves carry no SQL. The listener clears it once the statement has run, so a statement that
+//did not go through the inspector is not taken for the previous one of the thread. The statement is returned
+//unchanged.
+//  hibernate.session_factory.statement_inspector=org.jhd.metrics.SqlStatementInspector
+public class SqlStatementInspector implements StatementInspector {
+    private static final ThreadLocal<String> CURRENT_STATEMENT = new ThreadLocal<>();
+
+    //the SQL of the statement being executed by the current thread, null if the inspector is not registered or the
+    //statement did not go through it
+    public static String currentStatement() {
+        return CURRENT_STATEMENT.get();
+    }
+
+    static void clear() {
+        CURRENT_STATEMENT.remove();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        CURRENT_STATEMENT.set(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,48 @@
+package org.jhd.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+//The HikariCP pool behind an EntityManagerFactory, however the unit was given its connections:
+//  - a DataSource (CustomPersistenceUnitInfo): the HikariDataSource itself or, with replicas, the primary pool of
+//    the ReplicaRoutingDataSource - its replicas are ReplicaRoutingDataSource.getReplicas()
+//  - a pool created by hibernate-hikaricp (hibernate.connection.provider_class in persistence.xml)
+//Hibernate's DataSource provider says it unwraps to any DataSource type and then casts, so the DataSource is
+//unwrapped first and looked at here instead of asking the provider for a HikariDataSource.
+public final class ConnectionPools {
+    private ConnectionPools() {
+    }
+
+    //null when the connections do not come from HikariCP (e.g. Hibernate's built-in pool)
+    public static HikariDataSource primaryPool(EntityManagerFactory emf) {
+        ConnectionProvider connectionProvider = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .requireService(ConnectionProvider.class);
+        if (connectionProvider.isUnwrappableAs(DataSource.class)) {
+            return primaryPool(connectionProvider.unwrap(DataSource.class));
+        }
+        if (connectionProvider.isUnwrappableAs(HikariDataSource.class)) {
+            return connectionProvider.unwrap(HikariDataSource.class);
+        }
+        return null;
+    }
+
+    private static HikariDataSource primaryPool(DataSource dataSource) {
+        if (dataSource instanceof ReplicaRoutingDataSource routingDataSource) {
+            return routingDataSource.getPrimary();
+        }
+        if (dataSource instanceof HikariDataSource pool) {
+            return pool;
+        }
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not unwrap the DataSource of the unit", e);
+        }
+    }
+}
@@ -1,25 +1,72 @@
 package org.jhd.persistence;
 
+import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import jakarta.persistence.SharedCacheMode;
 import jakarta.persistence.ValidationMode;
 import jakarta.persistence.spi.ClassTransformer;
 import jakarta.persistence.spi.PersistenceUnitInfo;
 import jakarta.persistence.spi.PersistenceUnitTransactionType;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.cfg.AvailableSettings;
+import org.jhd.config.Configuration;
+import org.jhd.metrics.PoolMetrics;
+import org.jhd.metrics.PoolStatistics;
 
 import javax.sql.DataSource;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 //We can bootstrap a JPA implementation without using the “persistence.xml” file, by just using plain Java. This
 //class is a plain data container, which stores the configuration parameters bound to a specific persistence unit.
 //It’s not suitable for use cases where it’s necessary to test in isolation the application components that use
 //different persistence units class representing persistence.xml
-public class CustomPersistenceUnitInfo implements PersistenceUnitInfo {
+public class CustomPersistenceUnitInfo implements PersistenceUnitInfo, AutoCloseable {
     private final String persistentUnitName;
-
+    private final PoolSettings poolSettings;
+    //read-only transactions go to these databases when there are any, see ReplicaRoutingDataSource
+    private final List<PoolSettings> replicaPoolSettings;
+    private final ReplicaSettings replicaSettings;
+    //passed to Hibernate by getProperties()
+    private final Map<String, Object> jpaProperties;
+
+    //one pool per persistence unit (and per replica), created on first use. Hibernate asks for the DataSource more
+    //than once while it boots - creating a pool on every call opened connections that were never closed
+    private volatile DataSource dataSource;
+    //the pool of dataSource or, with replicas, its primary - written before dataSource
+    private HikariDataSource primaryPool;
+
+    //profile of the jhd.profile system property / JHD_PROFILE environment variable, dev by default
     public CustomPersistenceUnitInfo(String persistentUnitName) {
+        this(persistentUnitName, Configuration.load());
+    }
+
+    public CustomPersistenceUnitInfo(String persistentUnitName, Configuration configuration) {
+        this(persistentUnitName, configuration.poolSettings(), configuration.replicaPoolSettings(),
+                configuration.replicaSettings(), configuration.jpaProperties());
+    }
+
+    public CustomPersistenceUnitInfo(String persistentUnitName, PoolSettings poolSettings) {
+        this(persistentUnitName, poolSettings, Map.of());
+    }
+
+    public CustomPersistenceUnitInfo(String persistentUnitName, PoolSettings poolSettings,
+                                     Map<String, Object> jpaProperties) {
+        this(persistentUnitName, poolSettings, List.of(), ReplicaSettings.defaults(), jpaProperties);
+    }
+
+    //poolSettings is the primary, every replica gets its own pool
+    public CustomPersistenceUnitInfo(String persistentUnitName, PoolSettings poolSettings,
+                                     List<PoolSettings> replicaPoolSettings, ReplicaSettings replicaSettings,
+                                     Map<String, Object> jpaProperties) {
         this.persistentUnitName = persistentUnitName;
+        this.poolSettings = poolSettings;
+        this.replicaPoolSettings = List.copyOf(replicaPoolSettings);
+        this.replicaSettings = replicaSettings;
+        this.jpaProperties = Map.copyOf(jpaProperties);
     }
 
     @Override
@@ -37,13 +84,10 @@ public class CustomPersistenceUnitInfo implements PersistenceUnitInfo {
         return PersistenceUnitTransactionType.RESOURCE_LOCAL;
     }
 
+    //the unit is RESOURCE_LOCAL - its connections come from getNonJtaDataSource()
     @Override
     public DataSource getJtaDataSource() {
-        HikariDataSource hikariDataSource = new HikariDataSource();
-        hikariDataSource.setJdbcUrl("jdbc:mysql://host.docker.internal:3307/jpahd");
-        hikariDataSource.setUsername("root");
-        hikariDataSource.setPassword("password");
-        return hikariDataSource;
+        return null;
     }
 
     @Override
@@ -53,7 +97,74 @@ public class CustomPersistenceUnitInfo implements PersistenceUnitInfo {
 
     @Override
     public DataSource getNonJtaDataSource() {
-        return null;
+        //double-checked locking - the volatile read is all it costs once the pool exists
+        DataSource pool = dataSource;
+        if (pool == null) {
+            synchronized (this) {
+                pool = dataSource;
+                if (pool == null) {
+                    dataSource = pool = createDataSource();
+                }
+            }
+        }
+        return pool;
+    }
+
+    //of the primary when there are replicas - ReplicaRoutingDataSource.getReplicas() for theirs. Throws while a
+    //lazyStart pool has not handed out its first connection
+    public PoolStatistics getPoolStatistics() {
+        getNonJtaDataSource();
+        return PoolMetrics.statistics(primaryPool);
+    }
+
+    //Hibernate does not close a DataSource it was given - emf.close() calls this through the SessionFactoryObserver
+    //registered in getProperties()
+    @Override
+    public synchronized void close() {
+        if (dataSource instanceof ReplicaRoutingDataSource routingDataSource) {
+            routingDataSource.close();
+        } else if (primaryPool != null) {
+            primaryPool.close();
+        }
+    }
+
+    private DataSource createDataSource() {
+        primaryPool = createPool(persistentUnitName, poolSettings);
+        if (replicaPoolSettings.isEmpty()) {
+            return primaryPool;
+        }
+        List<HikariDataSource> replicaPools = new ArrayList<>();
+        try {
+            for (int i = 0; i < replicaPoolSettings.size(); i++) {
+                replicaPools.add(createPool(persistentUnitName + "-replica-" + i, replicaPoolSettings.get(i)));
+            }
+        } catch (RuntimeException e) {
+            replicaPools.forEach(HikariDataSource::close);
+            primaryPool.close();
+            throw e;
+        }
+        return new ReplicaRoutingDataSource(primaryPool, replicaPools, replicaSettings);
+    }
+
+    private static HikariDataSource createPool(String poolName, PoolSettings poolSettings) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(poolSettings.jdbcUrl());
+        config.setUsername(poolSettings.username());
+        config.setPassword(poolSettings.password());
+        config.setMaximumPoolSize(poolSettings.maximumPoolSize());
+        config.setMinimumIdle(poolSettings.minimumIdle());
+        config.setConnectionTimeout(poolSettings.connectionTimeout().toMillis());
+        config.setLeakDetectionThreshold(poolSettings.leakDetectionThreshold().toMillis());
+        poolSettings.dataSourceProperties().forEach(config::addDataSourceProperty);
+        config.setMetricsTrackerFactory(new PoolMetrics());
+        if (poolSettings.lazyStart()) {
+            //the no-arg HikariDataSource starts its pool in the first getConnection()
+            HikariDataSource pool = new HikariDataSource();
+            config.copyStateTo(pool);
+            return pool;
+        }
+        return new HikariDataSource(config);
     }
 
     @Override
@@ -71,14 +182,16 @@ public class CustomPersistenceUnitInfo implements PersistenceUnitInfo {
         return null;
     }
 
+    //the entities are the ones of getManagedClassNames() - Hibernate does not look for others on the classpath
     @Override
     public boolean excludeUnlistedClasses() {
-        return false;
+        return true;
     }
 
     @Override
+    //only entities annotated @Cacheable go to the second-level cache
     public SharedCacheMode getSharedCacheMode() {
-        return null;
+        return SharedCacheMode.ENABLE_SELECTIVE;
     }
 
     @Override
@@ -88,7 +201,15 @@ public class CustomPersistenceUnitInfo implements PersistenceUnitInfo {
 
     @Override
     public Properties getProperties() {
-        return null;
+        Properties properties = new Properties();
+        properties.putAll(jpaProperties);
+        properties.put(AvailableSettings.SESSION_FACTORY_OBSERVER, new SessionFactoryObserver() {
+            @Override
+            public void sessionFactoryClosed(SessionFactory factory) {
+                close();
+            }
+        });
+        return properties;
     }
 
     @Override
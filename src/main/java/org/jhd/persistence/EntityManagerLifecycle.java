@@ -0,0 +1,237 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.jhd.metrics.DataAccessMetrics;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Every EntityManager holds a persistence context and, while a transaction is running, a JDBC connection. One that
+//is never closed keeps both until it is garbage collected - under load that exhausts the connection pool.
+//This class is the only place that creates EntityManagers for the DAOs and JpaService: they are handed out
+//scoped (try-with-resources or a callback) so they are always closed, and optionally a leak detector reports
+//the allocation stack of any EntityManager held for longer than a threshold.
+public class EntityManagerLifecycle implements AutoCloseable {
+    //persistence unit property, in milliseconds - absent or 0 disables the leak detector
+    public static final String LEAK_DETECTION_THRESHOLD = "jhd.entity-manager.leak-detection-threshold-ms";
+
+    private static final Logger LOGGER = Logger.getLogger(EntityManagerLifecycle.class.getName());
+
+    private final EntityManagerFactory emf;
+    private final Duration leakDetectionThreshold;
+    private final Set<ScopedEntityManager> openEntityManagers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    //null when leak detection is disabled
+    private final ScheduledExecutorService leakDetector;
+
+    public EntityManagerLifecycle(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, leakDetectionThreshold(entityManagerFactory));
+    }
+
+    public EntityManagerLifecycle(EntityManagerFactory entityManagerFactory, Duration leakDetectionThreshold) {
+        this.emf = entityManagerFactory;
+        this.leakDetectionThreshold = leakDetectionThreshold;
+        if (leakDetectionThreshold.isZero()) {
+            this.leakDetector = null;
+        } else {
+            this.leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "entity-manager-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long periodMillis = leakDetectionThreshold.toMillis();
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    //caller must close it - use with try-with-resources
+    public ScopedEntityManager open() {
+        ScopedEntityManager scoped = new ScopedEntityManager(emf.createEntityManager(), leakDetector != null);
+        openEntityManagers.add(scoped);
+        opened.incrementAndGet();
+        return scoped;
+    }
+
+    //no transaction - for reads
+    public <R> R execute(Function<EntityManager, R> operation) {
+        try (ScopedEntityManager scoped = open()) {
+            return operation.apply(scoped.get());
+        }
+    }
+
+    //EntityManager per transaction - commit if the operation returns, rollback if it throws
+    public <R> R executeInTransaction(Function<EntityManager, R> operation) {
+        try (ScopedEntityManager scoped = open()) {
+            EntityTransaction tx = scoped.get().getTransaction();
+            tx.begin();
+            try {
+                R returnValue = operation.apply(scoped.get());
+                tx.commit();
+                return returnValue;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    //executeInTransaction, run again after an optimistic lock conflict (the row was changed by another transaction
+    //between the read and the flush/commit) - each attempt in a new EntityManager, so it reads the current rows.
+    //The operation must be safe to run more than once: no side effect outside the EntityManager. Any other
+    //exception, or the conflict of the last attempt, goes to the caller
+    public <R> R executeInTransactionWithRetry(RetryPolicy retryPolicy, Function<EntityManager, R> operation) {
+        DataAccessMetrics metrics = DataAccessMetrics.global();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return executeInTransaction(operation);
+            } catch (RuntimeException e) {
+                if (!RetryPolicy.isOptimisticLockFailure(e)) {
+                    throw e;
+                }
+                if (attempt >= retryPolicy.maxAttempts()) {
+                    metrics.retriesExhausted();
+                    throw e;
+                }
+                metrics.transactionRetried();
+                try {
+                    Thread.sleep(retryPolicy.backoff(attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    //read-only transaction: entities are loaded read-only so Hibernate keeps no snapshot of their state for dirty
+    //checking, the context is never flushed (FlushMode.MANUAL) and the JDBC connection is flagged read-only so the
+    //driver / a replica can optimise. Whatever the operation modifies is not written.
+    public <R> R executeReadOnly(Function<EntityManager, R> operation) {
+        try (ScopedEntityManager scoped = open()) {
+            Session session = scoped.get().unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            //the connection is acquired by begin() - from a replica when the unit has a ReplicaRoutingDataSource.
+            //Flag it before the first statement and reset it before it goes back to the pool
+            Transaction tx = ReplicaRoutingDataSource.readOnly(session::beginTransaction);
+            session.doWork(connection -> connection.setReadOnly(true));
+            try {
+                R returnValue = operation.apply(scoped.get());
+                session.doWork(connection -> connection.setReadOnly(false));
+                tx.commit();
+                return returnValue;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    //on a broken connection the reset and the rollback fail too - always roll back, and e is what
+                    //the caller gets
+                    try {
+                        session.doWork(connection -> connection.setReadOnly(false));
+                    } catch (RuntimeException resetFailure) {
+                        e.addSuppressed(resetFailure);
+                    }
+                    try {
+                        tx.rollback();
+                    } catch (RuntimeException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    public Counters getCounters() {
+        return new Counters(opened.get(), closed.get(), leaked.get());
+    }
+
+    //stops the leak detector - EntityManagers still open are not closed, they belong to their callers
+    @Override
+    public void close() {
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.nanoTime();
+        for (ScopedEntityManager scoped : openEntityManagers) {
+            if (!scoped.reportedAsLeak && now - scoped.openedAt > leakDetectionThreshold.toNanos()) {
+                scoped.reportedAsLeak = true;
+                leaked.incrementAndGet();
+                LOGGER.log(Level.WARNING, "EntityManager held for more than " + leakDetectionThreshold.toMillis()
+                        + " ms, it was opened at", scoped.allocationStack);
+            }
+        }
+    }
+
+    private static Duration leakDetectionThreshold(EntityManagerFactory entityManagerFactory) {
+        Object threshold = entityManagerFactory.getProperties().get(LEAK_DETECTION_THRESHOLD);
+        return threshold == null ? Duration.ZERO : Duration.ofMillis(Long.parseLong(threshold.toString()));
+    }
+
+    //open = opened - closed, leaked = held past the threshold (they are still counted as closed once released)
+    public record Counters(long opened, long closed, long leaked) {
+        public long open() {
+            return opened - closed;
+        }
+    }
+
+    public final class ScopedEntityManager implements AutoCloseable {
+        private final EntityManager em;
+        private final long openedAt = System.nanoTime();
+        //only captured when leak detection is enabled - filling in a stack trace is not free
+        private final Throwable allocationStack;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean reportedAsLeak;
+
+        private ScopedEntityManager(EntityManager em, boolean captureAllocationStack) {
+            this.em = em;
+            this.allocationStack = captureAllocationStack ? new Throwable("EntityManager allocation stack") : null;
+        }
+
+        public EntityManager get() {
+            return em;
+        }
+
+        //rolls back a transaction left open by the caller, then releases the context and its connection
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (em.isOpen() && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } finally {
+                if (em.isOpen()) {
+                    em.close();
+                }
+                openEntityManagers.remove(this);
+                closed.incrementAndGet();
+            }
+        }
+    }
+}
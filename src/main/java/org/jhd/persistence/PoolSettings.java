@@ -0,0 +1,85 @@
+package org.jhd.persistence;
+
+import java.time.Duration;
+import java.util.Map;
+
+//Sizing of the HikariCP pool of CustomPersistenceUnitInfo.
+//maximumPoolSize: a connection only does work while the database has a core (and a disk) for it - more
+//connections than that queue inside the database instead of in the pool, with more context switching. The
+//HikariCP guideline is cores * 2 + effective spindles, of the database server.
+//minimumIdle = maximumPoolSize makes it a fixed-size pool: no connection is opened while a request waits for it
+//and none is closed then reopened when the load fluctuates.
+//connectionTimeout: how long getConnection() waits for a free connection before failing - keep it short so an
+//exhausted pool fails fast instead of piling up threads.
+//leakDetectionThreshold: logs the stack of a connection held longer than this, ZERO disables it.
+//dataSourceProperties are passed to the JDBC driver.
+//lazyStart: the pool is started, and its first connection opened, by the first getConnection() instead of when the
+//EntityManagerFactory boots - a process that may never touch the database (or not right away) starts faster, and
+//a database that is down is only noticed then. Hibernate connects at boot anyway for schema generation and, unless
+//hibernate.temp.use_jdbc_metadata_defaults=false, to read the JDBC metadata.
+public record PoolSettings(
+        String jdbcUrl,
+        String username,
+        String password,
+        int maximumPoolSize,
+        int minimumIdle,
+        Duration connectionTimeout,
+        Duration leakDetectionThreshold,
+        Map<String, String> dataSourceProperties,
+        boolean lazyStart) {
+
+    private static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(5);
+
+    //MySQL Connector/J prepares every statement client side and sends JDBC batches one statement at a time unless
+    //told otherwise
+    private static final Map<String, String> MYSQL_PROPERTIES = Map.of(
+            //cache the prepared statements per connection instead of parsing them for every execution
+            "cachePrepStmts", "true",
+            "prepStmtCacheSize", "250",
+            "prepStmtCacheSqlLimit", "2048",
+            //server-side prepared statements: the server parses each statement once per connection
+            "useServerPrepStmts", "true",
+            //sends a batch of INSERTs as one multi-row INSERT
+            "rewriteBatchedStatements", "true");
+
+    public PoolSettings {
+        if (minimumIdle > maximumPoolSize) {
+            throw new IllegalArgumentException("minimumIdle " + minimumIdle + " > maximumPoolSize " + maximumPoolSize);
+        }
+        dataSourceProperties = Map.copyOf(dataSourceProperties);
+    }
+
+    //fixed-size pool of cores * 2 + 1 connections (assuming the database runs on similar hardware), the MySQL
+    //statement cache properties for a MySQL url
+    public static PoolSettings forUrl(String jdbcUrl, String username, String password) {
+        int poolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        return new PoolSettings(jdbcUrl, username, password, poolSize, poolSize, DEFAULT_CONNECTION_TIMEOUT,
+                Duration.ZERO, jdbcUrl.startsWith("jdbc:mysql:") ? MYSQL_PROPERTIES : Map.of(), false);
+    }
+
+    //a replica of the same database - same credentials, pool sizing and driver properties
+    public PoolSettings withJdbcUrl(String jdbcUrl) {
+        return new PoolSettings(jdbcUrl, username, password, maximumPoolSize, minimumIdle, connectionTimeout,
+                leakDetectionThreshold, dataSourceProperties, lazyStart);
+    }
+
+    public PoolSettings withPoolSize(int maximumPoolSize, int minimumIdle) {
+        return new PoolSettings(jdbcUrl, username, password, maximumPoolSize, minimumIdle, connectionTimeout,
+                leakDetectionThreshold, dataSourceProperties, lazyStart);
+    }
+
+    public PoolSettings withConnectionTimeout(Duration connectionTimeout) {
+        return new PoolSettings(jdbcUrl, username, password, maximumPoolSize, minimumIdle, connectionTimeout,
+                leakDetectionThreshold, dataSourceProperties, lazyStart);
+    }
+
+    public PoolSettings withLeakDetectionThreshold(Duration leakDetectionThreshold) {
+        return new PoolSettings(jdbcUrl, username, password, maximumPoolSize, minimumIdle, connectionTimeout,
+                leakDetectionThreshold, dataSourceProperties, lazyStart);
+    }
+
+    public PoolSettings withLazyStart(boolean lazyStart) {
+        return new PoolSettings(jdbcUrl, username, password, maximumPoolSize, minimumIdle, connectionTimeout,
+                leakDetectionThreshold, dataSourceProperties, lazyStart);
+    }
+}
@@ -0,0 +1,205 @@
+package org.jhd.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//One pool per database: the connections of read-only transactions come from the replicas, every other one from
+//the primary. Hibernate takes the connection of a transaction when it begins it - a transaction begun inside
+//readOnly(...) is read-only. EntityManagerLifecycle.executeReadOnly (ProductDao.get/getAll/getPage...,
+//JpaService.runReadOnly) and ProductDao.stream() begin theirs that way.
+//The replicas lag behind the primary, a read may not see a write that was just committed: with a
+//readYourWritesWindow (ReplicaSettings) the thread that wrote reads from the primary for a while, other threads
+//can still read the old row - and put it in the second-level cache.
+//A replica that cannot hand out a connection (down, pool exhausted after its connectionTimeout) is skipped for
+//that transaction, which reads from the primary instead.
+public class ReplicaRoutingDataSource implements DataSource, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ReplicaRoutingDataSource.class.getName());
+
+    //set while a read-only transaction acquires its connection
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final ReplicaSettings settings;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    //System.nanoTime() of the last primary connection the thread took for a read-write transaction
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final List<LongAdder> replicaConnections = new ArrayList<>();
+    private final LongAdder stickyReads = new LongAdder();
+    private final LongAdder replicaFailures = new LongAdder();
+
+    //closes the pools when it is closed
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    ReplicaSettings settings) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.settings = settings;
+        this.replicas.forEach(replica -> replicaConnections.add(new LongAdder()));
+    }
+
+    //the connections acquired by beginTransaction come from a replica, e.g.
+    //  Transaction tx = ReplicaRoutingDataSource.readOnly(session::beginTransaction);
+    //Does nothing when the persistence unit has no ReplicaRoutingDataSource
+    public static <R> R readOnly(Supplier<R> beginTransaction) {
+        boolean outermost = READ_ONLY.get() == null;
+        READ_ONLY.set(Boolean.TRUE);
+        try {
+            return beginTransaction.get();
+        } finally {
+            if (outermost) {
+                READ_ONLY.remove();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (READ_ONLY.get() == null || replicas.isEmpty()) {
+            Connection connection = primary.getConnection();
+            primaryConnections.increment();
+            if (!settings.readYourWritesWindow().isZero()) {
+                lastWrite.set(System.nanoTime());
+            }
+            return connection;
+        }
+        if (wroteRecently()) {
+            stickyReads.increment();
+        } else {
+            int replica = chooseReplica();
+            try {
+                Connection connection = replicas.get(replica).getConnection();
+                replicaConnections.get(replica).increment();
+                return connection;
+            } catch (SQLException e) {
+                replicaFailures.increment();
+                LOGGER.log(Level.WARNING, "Replica " + replicas.get(replica).getPoolName()
+                        + " gave no connection, reading from the primary", e);
+            }
+        }
+        Connection connection = primary.getConnection();
+        primaryConnections.increment();
+        return connection;
+    }
+
+    private boolean wroteRecently() {
+        Long writeNanos = lastWrite.get();
+        if (writeNanos == null) {
+            return false;
+        }
+        if (System.nanoTime() - writeNanos < settings.readYourWritesWindow().toNanos()) {
+            return true;
+        }
+        lastWrite.remove();
+        return false;
+    }
+
+    private int chooseReplica() {
+        int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        if (settings.loadBalancing() == ReplicaSettings.LoadBalancing.ROUND_ROBIN) {
+            return first;
+        }
+        //starts at the round robin one, so replicas with the same number of connections take turns
+        int chosen = first;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = (first + i) % replicas.size();
+            HikariPoolMXBean pool = replicas.get(replica).getHikariPoolMXBean();
+            int active = pool == null ? 0 : pool.getActiveConnections();
+            if (active < fewest) {
+                fewest = active;
+                chosen = replica;
+            }
+        }
+        return chosen;
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    public List<HikariDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(primaryConnections.sum(),
+                replicaConnections.stream().map(LongAdder::sum).toList(),
+                stickyReads.sum(),
+                replicaFailures.sum());
+    }
+
+    //connections handed out since the DataSource was created. replicaConnections is per replica, in the order of
+    //getReplicas(). stickyReads: read-only transactions sent to the primary by the read-your-writes window,
+    //replicaFailures: the ones sent there because their replica failed
+    public record Statistics(
+            long primaryConnections,
+            List<Long> replicaConnections,
+            long stickyReads,
+            long replicaFailures) {
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    //the credentials are the ones of each pool
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are configured per pool");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
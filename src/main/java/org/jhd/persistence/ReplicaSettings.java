@@ -0,0 +1,23 @@
+package org.jhd.persistence;
+
+import java.time.Duration;
+
+//How ReplicaRoutingDataSource spreads the read-only transactions over the replicas.
+//readYourWritesWindow: a thread that took a primary connection for a read-write transaction keeps reading from
+//the primary for this long, so it sees its own writes while the replicas catch up - Duration.ZERO disables it.
+//Counted from the start of the write transaction: make it longer than the transaction plus the replication lag.
+public record ReplicaSettings(
+        LoadBalancing loadBalancing,
+        Duration readYourWritesWindow) {
+
+    public enum LoadBalancing {
+        //one replica after the other
+        ROUND_ROBIN,
+        //the replica with the fewest connections in use - evens out replicas of different sizes or slow queries
+        LEAST_CONNECTIONS
+    }
+
+    public static ReplicaSettings defaults() {
+        return new ReplicaSettings(LoadBalancing.ROUND_ROBIN, Duration.ZERO);
+    }
+}
@@ -0,0 +1,103 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.exception.LockAcquisitionException;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+//How EntityManagerLifecycle.executeInTransactionWithRetry runs a transaction again after an optimistic lock
+//conflict. The transaction that failed was rolled back, the next attempt starts from a new persistence context
+//and reads the rows again.
+//Exponential backoff with full jitter: attempt n waits a random time between 0 and
+//min(maxBackoff, initialBackoff * multiplier^(n-1)) - threads that collided on the same row do not all come back
+//at the same moment and collide again.
+//Persistence unit properties (absent: the defaults() value):
+//  jhd.retry.max-attempts=5 (1 disables retrying)
+//  jhd.retry.initial-backoff-ms=10
+//  jhd.retry.max-backoff-ms=1000
+public record RetryPolicy(
+        int maxAttempts,
+        Duration initialBackoff,
+        Duration maxBackoff,
+        double multiplier) {
+
+    public static final String MAX_ATTEMPTS = "jhd.retry.max-attempts";
+    public static final String INITIAL_BACKOFF = "jhd.retry.initial-backoff-ms";
+    public static final String MAX_BACKOFF = "jhd.retry.max-backoff-ms";
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1, was " + maxAttempts);
+        }
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be at least 1, was " + multiplier);
+        }
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, Duration.ofMillis(10), Duration.ofSeconds(1), 2);
+    }
+
+    public static RetryPolicy from(Map<String, Object> properties) {
+        RetryPolicy defaults = defaults();
+        return new RetryPolicy(
+                (int) longValue(properties, MAX_ATTEMPTS, defaults.maxAttempts()),
+                Duration.ofMillis(longValue(properties, INITIAL_BACKOFF, defaults.initialBackoff().toMillis())),
+                Duration.ofMillis(longValue(properties, MAX_BACKOFF, defaults.maxBackoff().toMillis())),
+                defaults.multiplier());
+    }
+
+    //no retry
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, Duration.ZERO, Duration.ZERO, 1);
+    }
+
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier);
+    }
+
+    //wait before the attempt following the failed one, attempt starts at 1
+    public Duration backoff(int attempt) {
+        double ceiling = Math.min(maxBackoff.toNanos(),
+                initialBackoff.toNanos() * Math.pow(multiplier, attempt - 1));
+        return Duration.ofNanos((long) (ThreadLocalRandom.current().nextDouble() * ceiling));
+    }
+
+    //the JPA exception thrown by flush()/merge(), or the Hibernate one (a StatelessSession, or the cause of the
+    //RollbackException thrown by commit())
+    public static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //worth running again later: an optimistic lock conflict, a lock timeout / deadlock, or a failure the driver
+    //(SQLTransientException, SQLRecoverableException) or Hibernate (a lost connection) reports as temporary
+    public static boolean isTransientFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException
+                    || cause instanceof PessimisticLockException || cause instanceof LockTimeoutException
+                    || cause instanceof LockAcquisitionException || cause instanceof JDBCConnectionException
+                    || cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long longValue(Map<String, Object> properties, String key, long defaultValue) {
+        Object value = properties.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString().trim());
+    }
+}
@@ -0,0 +1,27 @@
+package org.jhd.persistence;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.mapping.EntityVersionMapping;
+import org.hibernate.persister.entity.EntityPersister;
+
+//StatelessSession.insert() of Hibernate 6.2 only seeds the @Version of an entity when its id is generated before the
+//INSERT (sequence, pooled ids of META-INF/orm-pooled-ids.xml). With GenerationType.IDENTITY the version is left
+//null and the INSERT violates the NOT NULL of the version column - seed it the way a Session would.
+public final class StatelessInserts {
+    private StatelessInserts() {
+    }
+
+    //returns the generated id, as StatelessSession.insert()
+    public static Object insert(StatelessSession session, Object entity) {
+        SharedSessionContractImplementor sessionImplementor = (SharedSessionContractImplementor) session;
+        EntityPersister persister = sessionImplementor.getEntityPersister(null, entity);
+        if (persister.isVersioned() && persister.getVersion(entity) == null) {
+            EntityVersionMapping versionMapping = persister.getVersionMapping();
+            versionMapping.getVersionAttribute().getPropertyAccess().getSetter()
+                    .set(entity, Versioning.seed(versionMapping, sessionImplementor));
+        }
+        return session.insert(entity);
+    }
+}
@@ -0,0 +1,140 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.Session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//A long-lived persistence context per thread, for batch jobs that want the identity map across operations (an
+//entity read once is not read again, a saved entity can be removed without being looked up) without sharing one
+//EntityManager between threads - it is not thread-safe - and without keeping every entity ever touched:
+//  - each thread gets its own EntityManager, created on its first call and reused by the next ones
+//  - after every transaction, a context holding more than autoClearThreshold entities is cleared (the entities
+//    become detached, the memory can be reclaimed)
+//  - a transaction that fails clears the context: its entities may hold changes that were rolled back
+//  - the contexts of threads that died are closed when the next thread creates one, release() closes the one of
+//    the calling thread (call it when a virtual thread or a short-lived thread is done), close() closes them all
+//The EntityManager only holds a JDBC connection while a transaction runs.
+//The threshold is an entity count, the persistence unit property jhd.entity-manager.auto-clear-threshold
+//(default 1000) - entities of this application are small and all about the same size, a count is as good an
+//estimate of the memory as any and costs nothing to read.
+public class ThreadLocalEntityManager implements AutoCloseable {
+    public static final String AUTO_CLEAR_THRESHOLD = "jhd.entity-manager.auto-clear-threshold";
+    private static final int DEFAULT_AUTO_CLEAR_THRESHOLD = 1000;
+
+    private final EntityManagerFactory emf;
+    private final int autoClearThreshold;
+    private final Map<Thread, EntityManager> entityManagers = new ConcurrentHashMap<>();
+    private final LongAdder autoClears = new LongAdder();
+
+    public ThreadLocalEntityManager(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, autoClearThreshold(entityManagerFactory));
+    }
+
+    public ThreadLocalEntityManager(EntityManagerFactory entityManagerFactory, int autoClearThreshold) {
+        this.emf = entityManagerFactory;
+        this.autoClearThreshold = autoClearThreshold;
+    }
+
+    //commit if the operation returns, rollback if it throws. Called again from inside the operation it joins the
+    //running transaction
+    public <R> R executeInTransaction(Function<EntityManager, R> operation) {
+        EntityManager em = current();
+        EntityTransaction tx = em.getTransaction();
+        if (tx.isActive()) {
+            return operation.apply(em);
+        }
+        tx.begin();
+        try {
+            R returnValue = operation.apply(em);
+            tx.commit();
+            if (getEntityCount() > autoClearThreshold) {
+                em.clear();
+                autoClears.increment();
+            }
+            return returnValue;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            em.clear();
+            throw e;
+        }
+    }
+
+    //entities in the context of the calling thread, 0 if it has none
+    public int getEntityCount() {
+        EntityManager em = entityManagers.get(Thread.currentThread());
+        return em == null ? 0 : em.unwrap(Session.class).getStatistics().getEntityCount();
+    }
+
+    //contexts cleared because they reached the threshold, all threads
+    public long getAutoClearCount() {
+        return autoClears.sum();
+    }
+
+    //open contexts, all threads
+    public int size() {
+        return entityManagers.size();
+    }
+
+    //closes the context of the calling thread - the next call creates a new one
+    public void release() {
+        EntityManager em = entityManagers.remove(Thread.currentThread());
+        if (em != null) {
+            closeQuietly(em);
+        }
+    }
+
+    //closes the context of every thread - only once no thread is using them any more
+    @Override
+    public void close() {
+        entityManagers.keySet().forEach(thread -> {
+            EntityManager em = entityManagers.remove(thread);
+            if (em != null) {
+                closeQuietly(em);
+            }
+        });
+    }
+
+    private EntityManager current() {
+        EntityManager em = entityManagers.get(Thread.currentThread());
+        if (em == null) {
+            closeContextsOfDeadThreads();
+            em = emf.createEntityManager();
+            entityManagers.put(Thread.currentThread(), em);
+        }
+        return em;
+    }
+
+    //a dead thread is not using its context any more, it can be closed from here
+    private void closeContextsOfDeadThreads() {
+        entityManagers.keySet().forEach(thread -> {
+            if (!thread.isAlive()) {
+                EntityManager em = entityManagers.remove(thread);
+                if (em != null) {
+                    closeQuietly(em);
+                }
+            }
+        });
+    }
+
+    private static void closeQuietly(EntityManager em) {
+        if (em.isOpen()) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private static int autoClearThreshold(EntityManagerFactory entityManagerFactory) {
+        Object threshold = entityManagerFactory.getProperties().get(AUTO_CLEAR_THRESHOLD);
+        return threshold == null ? DEFAULT_AUTO_CLEAR_THRESHOLD : Integer.parseInt(threshold.toString());
+    }
+}
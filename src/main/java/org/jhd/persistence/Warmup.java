@@ -0,0 +1,182 @@
+package org.jhd.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Parameter;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.EntityType;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.spi.SqmQuery;
+import org.hibernate.query.sqm.tree.SqmStatement;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+//Does the work of the first requests before the EntityManagerFactory takes traffic - without it the requests right
+//after a deploy pay for it, hundreds of milliseconds for the unlucky ones:
+//  - opens the pool: every warm-up thread holds a connection at the same time, so all of them are opened now
+//    (HikariCP fills a fixed-size pool in the background, but the first requests can still find it empty, Hibernate's
+//    own pool only grows on demand)
+//  - initializes the loaders of every entity (em.find of an id that does not exist)
+//  - runs every named select query once per connection: the SQL is translated and the query plan cached by
+//    Hibernate, the statement prepared on the connection (statement cache of the driver or database) - with
+//    setMaxResults(1), the limit is applied to the SQL at execution and shares the plan. The parameters are bound
+//    to a neutral value of their type, queries with other parameter types are only parsed.
+//Everything runs in transactions that are rolled back. The named queries were already parsed and validated when the
+//EntityManagerFactory was built.
+//The connections are the ones of read-write transactions: the replica pools of a ReplicaRoutingDataSource are
+//left to fill on their own.
+public final class Warmup {
+    private static final Logger LOGGER = Logger.getLogger(Warmup.class.getName());
+    //how long a thread that has its connection waits for the others - a pool that cannot open all of its
+    //connections does not block the startup
+    private static final long FILL_TIMEOUT_SECONDS = 30;
+
+    private Warmup() {
+    }
+
+    //throws when a warm-up transaction fails: the database is not reachable, or a named query cannot run
+    public static Result run(EntityManagerFactory emf, WarmupSettings settings) {
+        long start = System.nanoTime();
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        List<String> namedQueries = new ArrayList<>();
+        sessionFactory.getQueryEngine().getNamedObjectRepository()
+                .visitSqmQueryMementos(memento -> namedQueries.add(memento.getRegistrationName()));
+        List<EntityType<?>> entities = List.copyOf(emf.getMetamodel().getEntities());
+        int poolSize = poolSize(emf);
+        int connections = settings.connections() == 0 ? poolSize : Math.min(settings.connections(), poolSize);
+
+        CountDownLatch allConnected = new CountDownLatch(connections);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                results.add(threads.submit(() -> {
+                    for (int iteration = 0; iteration < settings.iterations(); iteration++) {
+                        warmUp(emf, entities, namedQueries, iteration == 0 ? allConnected : null);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Warm-up interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Warm-up failed", e.getCause());
+        } finally {
+            threads.shutdownNow();
+        }
+
+        Result result = new Result(Duration.ofNanos(System.nanoTime() - start), connections, entities.size(),
+                namedQueries.size(), settings.iterations());
+        LOGGER.info(() -> "Warm-up done: " + result);
+        return result;
+    }
+
+    //one transaction, rolled back. allConnected: the connection is kept until every thread has one
+    private static void warmUp(EntityManagerFactory emf, List<EntityType<?>> entities, List<String> namedQueries,
+                               CountDownLatch allConnected) throws InterruptedException {
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            //takes the connection
+            em.getTransaction().begin();
+            if (allConnected != null) {
+                allConnected.countDown();
+                allConnected.await(FILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            try {
+                for (EntityType<?> entity : entities) {
+                    Object id = neutralValue(entity.getIdType().getJavaType());
+                    if (id != null) {
+                        em.find(entity.getJavaType(), id);
+                    }
+                }
+                for (String name : namedQueries) {
+                    SqmStatement<?> statement = em.createNamedQuery(name).unwrap(SqmQuery.class).getSqmStatement();
+                    if (statement instanceof SqmSelectStatement<?> select) {
+                        //the result type is part of the key of the query plan, the same as the callers'
+                        runSelect(em.createNamedQuery(name, select.getResultType()));
+                    }
+                }
+            } finally {
+                em.getTransaction().rollback();
+            }
+        }
+    }
+
+    private static void runSelect(TypedQuery<?> query) {
+        for (Parameter<?> parameter : query.getParameters()) {
+            Object value = parameter.getParameterType() == null ? null : neutralValue(parameter.getParameterType());
+            if (value == null) {
+                return;
+            }
+            if (parameter.getName() != null) {
+                query.setParameter(parameter.getName(), value);
+            } else {
+                query.setParameter(parameter.getPosition(), value);
+            }
+        }
+        query.setMaxResults(1).getResultList();
+    }
+
+    private static Object neutralValue(Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return -1L;
+        }
+        if (type == Integer.class || type == int.class) {
+            return -1;
+        }
+        if (type == Short.class || type == short.class) {
+            return (short) -1;
+        }
+        if (type == Double.class || type == double.class) {
+            return 0.0;
+        }
+        if (type == String.class) {
+            return "";
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+
+    //maximumPoolSize of the HikariCP pool of the unit (ConnectionPools.primaryPool) - the primary's with replicas,
+    //the one read-write transactions use. Else hibernate.connection.pool_size, else 1
+    private static int poolSize(EntityManagerFactory emf) {
+        HikariDataSource pool = ConnectionPools.primaryPool(emf);
+        if (pool != null) {
+            return pool.getMaximumPoolSize();
+        }
+        Object poolSize = emf.getProperties().get(AvailableSettings.POOL_SIZE);
+        return poolSize == null ? 1 : Integer.parseInt(poolSize.toString().trim());
+    }
+
+    public record Result(
+            Duration elapsed,
+            int connections,
+            int entities,
+            int namedQueries,
+            int iterations) {
+    }
+}
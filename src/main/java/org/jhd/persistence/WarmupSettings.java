@@ -0,0 +1,50 @@
+package org.jhd.persistence;
+
+import java.util.Map;
+
+//What Warmup does before the EntityManagerFactory takes traffic.
+//connections: threads warming up at the same time, each holding its own connection - 0 is the size of the pool, so
+//all of it is opened. More than the pool is capped to the pool.
+//iterations: rounds of the warm-up per connection - the first one does the one-time work (loaders, SQL translation,
+//statements prepared on the connection), the others give the JIT the calls it needs to compile the hot paths.
+//Persistence unit properties (absent: the defaults() value):
+//  jhd.warmup.enabled=true
+//  jhd.warmup.connections=0
+//  jhd.warmup.iterations=20
+public record WarmupSettings(
+        boolean enabled,
+        int connections,
+        int iterations) {
+
+    public static final String ENABLED = "jhd.warmup.enabled";
+    public static final String CONNECTIONS = "jhd.warmup.connections";
+    public static final String ITERATIONS = "jhd.warmup.iterations";
+
+    public WarmupSettings {
+        if (connections < 0 || iterations < 1) {
+            throw new IllegalArgumentException("connections must be >= 0 and iterations > 0");
+        }
+    }
+
+    public static WarmupSettings defaults() {
+        return new WarmupSettings(true, 0, 20);
+    }
+
+    public static WarmupSettings disabled() {
+        return new WarmupSettings(false, 0, 1);
+    }
+
+    public static WarmupSettings from(Map<String, Object> properties) {
+        WarmupSettings defaults = defaults();
+        Object enabled = properties.get(ENABLED);
+        return new WarmupSettings(
+                enabled == null ? defaults.enabled() : Boolean.parseBoolean(enabled.toString().trim()),
+                intValue(properties, CONNECTIONS, defaults.connections()),
+                intValue(properties, ITERATIONS, defaults.iterations()));
+    }
+
+    private static int intValue(Map<String, Object> properties, String key, int defaultValue) {
+        Object value = properties.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+}
@@ -0,0 +1,49 @@
+package org.jhd.service;
+
+import org.jhd.dto.Page;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+//Non-blocking counterpart of Service: every call returns at once and completes its future when the (blocking)
+//JDBC work is done, so a caller can fan out independent lookups and join them -
+//  CompletableFuture.allOf(ids.stream().map(asyncService::get).toArray(CompletableFuture[]::new)).join()
+//stream() and saveAll(Stream) have no counterpart: a Stream is consumed by one thread, use streamAll() and
+//saveAll(Collection). close() waits for the submitted operations.
+public interface AsyncService<T, V> extends AutoCloseable {
+    CompletableFuture<Optional<T>> get(Long id);
+
+    CompletableFuture<List<T>> getAll();
+
+    CompletableFuture<Map<Long, T>> getAllById(Collection<Long> ids);
+
+    CompletableFuture<Optional<V>> getDto(long id);
+
+    CompletableFuture<List<V>> getAllAsDto();
+
+    CompletableFuture<Page<T>> getPage(Long afterId, int limit);
+
+    CompletableFuture<Page<T>> getPageByOffset(int pageNumber, int limit);
+
+    //the consumer runs on the thread reading the rows, not the caller's
+    CompletableFuture<Void> streamAll(Consumer<T> consumer);
+
+    CompletableFuture<Void> save(T t);
+
+    CompletableFuture<Void> saveAll(Collection<T> ts);
+
+    CompletableFuture<T> updateWithMergeDetached(T t, V v);
+
+    CompletableFuture<T> updateWithGetPersistent(T t, V v);
+
+    CompletableFuture<Integer> updateAll(Map<Long, V> updates);
+
+    CompletableFuture<Void> delete(T t);
+
+    @Override
+    void close();
+}
@@ -1,51 +1,262 @@
 package org.jhd.service;
 
+import com.zaxxer.hikari.HikariDataSource;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.Persistence;
+import org.jhd.metrics.DataAccessMetrics;
+import org.jhd.metrics.PoolMetrics;
+import org.jhd.metrics.PoolStatistics;
+import org.jhd.persistence.ConnectionPools;
+import org.jhd.persistence.EntityManagerLifecycle;
+import org.jhd.persistence.RetryPolicy;
+import org.jhd.persistence.Warmup;
+import org.jhd.persistence.WarmupSettings;
 
+import java.util.Deque;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
-//make this class singleton
+//One JpaService per persistence unit, created by the first getInstance(name) and kept until its shutdown(). Several
+//units live side by side - the MySQL unit, an H2 one for cache tables, one per tenant... - each with its own
+//EntityManagerFactory, connection pool and lifecycle: shutting one down leaves the others running.
+//getInstance() is on the path of every request. Once the unit is running it costs a ConcurrentHashMap read and a
+//volatile read, no lock: the lock of a unit is only taken while its EntityManagerFactory is created or shut down, and
+//only holds the callers of that unit.
 public class JpaService {
-    private static JpaService instance;
+    public static final String DEFAULT_PERSISTENCE_UNIT = "jpa-hibernate-persistence-unit";
 
-    EntityManagerFactory emf;
+    private static final ConcurrentMap<String, Unit> UNITS = new ConcurrentHashMap<>();
 
-    private JpaService() {
-        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit");
+    //the registry entry that created this instance
+    private final Unit unit;
+
+    private final EntityManagerFactory emf;
+
+    //creates and always closes the EntityManagers - share it with the DAOs (new ProductDao(lifecycle)) so all
+    //of them are counted and watched by the same leak detector
+    private final EntityManagerLifecycle lifecycle;
+
+    //jhd.retry.* of the persistence unit
+    private final RetryPolicy retryPolicy;
+
+    //closed by shutdown() before the EntityManagerFactory, last registered first
+    private final Deque<AutoCloseable> closeOnShutdown = new ConcurrentLinkedDeque<>();
+
+    private JpaService(Unit unit, EntityManagerFactory emf) {
+        this.unit = unit;
+        this.emf = emf;
+        lifecycle = new EntityManagerLifecycle(emf);
+        retryPolicy = RetryPolicy.from(emf.getProperties());
+        //the slow-query and N+1 thresholds are process wide - the main unit sets them, tenant and cache units don't
+        if (unit.name.equals(DEFAULT_PERSISTENCE_UNIT)) {
+            DataAccessMetrics.global().configure(emf.getProperties());
+        }
+        //jhd.warmup.* - opens the pool and runs the named queries before getInstance() returns, so the first
+        //requests don't pay for it
+        WarmupSettings warmupSettings = WarmupSettings.from(emf.getProperties());
+        if (warmupSettings.enabled()) {
+            try {
+                Warmup.run(emf, warmupSettings);
+            } catch (RuntimeException e) {
+                lifecycle.close();
+                emf.close();
+                throw e;
+            }
+        }
+    }
+
+    //the jpa-hibernate-persistence-unit MySQL unit
+    public static JpaService getInstance() {
+        return getInstance(DEFAULT_PERSISTENCE_UNIT);
+    }
+
+    //the unit given to register(...), else the persistence unit of that name in persistence.xml
+    public static JpaService getInstance(String persistenceUnitName) {
+        Unit unit = UNITS.get(persistenceUnitName);
+        if (unit == null) {
+            //creating a Unit is cheap - the EntityManagerFactory is created by unit.get(), outside the map
+            unit = UNITS.computeIfAbsent(persistenceUnitName,
+                    name -> new Unit(name, () -> Persistence.createEntityManagerFactory(name)));
+        }
+        return unit.get();
+    }
+
+    //a unit that is not in persistence.xml or not as is, e.g. a tenant database:
+    //  JpaService.register("tenant-42", () -> new HibernatePersistenceProvider()
+    //          .createContainerEntityManagerFactory(new CustomPersistenceUnitInfo("tenant-42", poolSettings), Map.of()));
+    //The factory is called by the first getInstance(persistenceUnitName), and again after a shutdown()
+    public static void register(String persistenceUnitName, Supplier<EntityManagerFactory> factory) {
+        if (UNITS.putIfAbsent(persistenceUnitName, new Unit(persistenceUnitName, factory)) != null) {
+            throw new IllegalStateException("Persistence unit " + persistenceUnitName + " is already registered");
+        }
+    }
+
+    //shuts the unit down if it is running and forgets it - a tenant that is gone
+    public static void unregister(String persistenceUnitName) {
+        Unit unit = UNITS.remove(persistenceUnitName);
+        if (unit != null) {
+            unit.shutdown();
+        }
+    }
+
+    //the units created by getInstance(...) and not shut down since
+    public static Set<String> getRunningPersistenceUnits() {
+        Set<String> running = new TreeSet<>();
+        UNITS.forEach((name, unit) -> {
+            if (unit.service != null) {
+                running.add(name);
+            }
+        });
+        return running;
     }
 
-    public static synchronized JpaService getInstance() {
-        return (instance == null) ? instance = new JpaService() : instance;
+    //every running unit, e.g. from a shutdown hook. The first failure is thrown once all of them are shut down
+    public static void shutdownAll() {
+        RuntimeException failure = null;
+        for (Unit unit : UNITS.values()) {
+            try {
+                unit.shutdown();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public String getPersistenceUnitName() {
+        return unit.name;
     }
 
     public EntityManagerFactory getEntityManagerFactory() {
         return emf;
     }
 
+    public EntityManagerLifecycle getEntityManagerLifecycle() {
+        return lifecycle;
+    }
+
+    //the HikariCP pool of the unit, created by Hibernate (hibernate.connection.provider_class) or given as DataSource -
+    //the primary's when the unit has replicas
+    public PoolStatistics getPoolStatistics() {
+        HikariDataSource pool = ConnectionPools.primaryPool(emf);
+        if (pool == null) {
+            throw new IllegalStateException("Persistence unit " + unit.name + " has no HikariCP pool");
+        }
+        return PoolMetrics.statistics(pool);
+    }
+
+    //components that still write through the EntityManagerFactory when they close, e.g. the pending updates of a
+    //WriteBehindProductUpdater - shutdown() closes them while the connection pool is still there
+    public void closeOnShutdown(AutoCloseable component) {
+        closeOnShutdown.push(component);
+    }
+
+    //closing the EntityManagerFactory stops its connection provider, which shuts the pool down - the other units
+    //keep running, and the next getInstance(name) of this one creates a new EntityManagerFactory.
+    //The first failure of a closeOnShutdown component is thrown once everything is closed
     public void shutdown() {
-        if (emf != null) {
-            emf.close();
+        unit.shutdown(this);
+    }
+
+    private void close() {
+        RuntimeException failure = null;
+        AutoCloseable component;
+        while ((component = closeOnShutdown.poll()) != null) {
+            try {
+                component.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e instanceof RuntimeException runtimeException
+                            ? runtimeException
+                            : new IllegalStateException("Could not close " + component, e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        lifecycle.close();
+        emf.close();
+        if (failure != null) {
+            throw failure;
         }
     }
 
+    //commits if the function returns, rolls back if it throws and closes the EntityManager (the context)
+    //in both cases
     public <T> T runInTransaction(Function<EntityManager, T> function) {
-        EntityManager em = emf.createEntityManager(); //represents the context
-        EntityTransaction transaction = em.getTransaction();
-        boolean success = false;
-        transaction.begin();
-        try {
-            T returnValue = function.apply(em);
-            success = true;
-            return returnValue;
-        } finally {
-            if(success) {
-                transaction.commit();
-            } else {
-                transaction.rollback();
+        return DataAccessMetrics.global().time("JpaService.runInTransaction",
+                () -> lifecycle.executeInTransaction(function));
+    }
+
+    //runInTransaction, run again (new EntityManager, backoff with jitter) when it fails on an optimistic lock conflict.
+    //For read-modify-write transactions that can be repeated as is, e.g. applying a price change to the current
+    //price - prefer it to pessimistic locks, which serialise every writer of a hot row even when they do not collide
+    public <T> T runInTransactionWithRetry(Function<EntityManager, T> function) {
+        return runInTransactionWithRetry(retryPolicy, function);
+    }
+
+    public <T> T runInTransactionWithRetry(RetryPolicy retryPolicy, Function<EntityManager, T> function) {
+        return DataAccessMetrics.global().time("JpaService.runInTransactionWithRetry",
+                () -> lifecycle.executeInTransactionWithRetry(retryPolicy, function));
+    }
+
+    //for query paths: read-only entities (no dirty checking snapshots), no flush and a read-only connection - of a
+    //replica when the unit has a ReplicaRoutingDataSource
+    public <T> T runReadOnly(Function<EntityManager, T> function) {
+        return DataAccessMetrics.global().time("JpaService.runReadOnly", () -> lifecycle.executeReadOnly(function));
+    }
+
+    //a persistence unit of the registry and its running JpaService, if any
+    private static final class Unit {
+        private final String name;
+        private final Supplier<EntityManagerFactory> factory;
+        //double-checked locking - null until the first get() and after a shutdown
+        private volatile JpaService service;
+
+        private Unit(String name, Supplier<EntityManagerFactory> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        private JpaService get() {
+            JpaService running = service;
+            if (running == null) {
+                synchronized (this) {
+                    running = service;
+                    if (running == null) {
+                        service = running = new JpaService(this, factory.get());
+                    }
+                }
+            }
+            return running;
+        }
+
+        private void shutdown() {
+            JpaService running = service;
+            if (running != null) {
+                shutdown(running);
+            }
+        }
+
+        //an instance that was already shut down (and maybe replaced by a new one) is not closed twice
+        private synchronized void shutdown(JpaService stopping) {
+            if (service != stopping) {
+                return;
             }
+            service = null;
+            stopping.close();
         }
     }
 }
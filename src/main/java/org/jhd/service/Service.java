@@ -1,21 +1,52 @@
 package org.jhd.service;
 
+import org.jhd.dto.Page;
 import org.jhd.dto.ProductDto;
 import org.jhd.entity.Product;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface Service<T, V> {
     Optional<T> get(Long id);
 
     List<T> getAll();
 
+    //id -> entity in the order of ids, ids without a row are left out
+    Map<Long, T> getAllById(Collection<Long> ids);
+
+    //projections - only the columns of V are read, no entity is created nor managed
+    Optional<V> getDto(long id);
+
+    List<V> getAllAsDto();
+
+    //keyset (seek) pagination - the limit elements following afterId (null for the first page), ordered by id
+    Page<T> getPage(Long afterId, int limit);
+
+    //OFFSET/LIMIT pagination, pageNumber starts at 0 - the database reads and skips every row before the page,
+    //so prefer getPage() for deep pages
+    Page<T> getPageByOffset(int pageNumber, int limit);
+
+    void streamAll(Consumer<T> consumer);
+
+    Stream<T> stream();
+
     void save(T t);
 
+    void saveAll(Collection<T> ts);
+
+    void saveAll(Stream<T> ts);
+
     T updateWithMergeDetached(T t, V v);
 
     T updateWithGetPersistent(T t, V v);
 
+    //id -> new values in one transaction, null fields of V are left unchanged - see WriteBehindProductUpdater
+    int updateAll(Map<Long, V> updates);
+
     void delete(T t);
 }
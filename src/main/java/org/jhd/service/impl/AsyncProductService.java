@@ -0,0 +1,181 @@
+package org.jhd.service.impl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dto.Page;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.persistence.ConnectionPools;
+import org.jhd.service.AsyncService;
+import org.jhd.service.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+//AsyncService over a blocking Service, one virtual thread per call.
+//A platform thread per request caps the fan-out at the size of a thread pool and serialises lookups behind it.
+//A virtual thread blocked on JDBC I/O gives its carrier (platform) thread back, so thousands of calls cost
+//thousands of small heap objects, not thousands of stacks.
+//Only as many calls as the pool has connections run at a time, the others wait on the semaphore:
+//  - without it every virtual thread would wait inside Hikari's getConnection() and fail after connectionTimeout
+//    under a burst, instead of queueing here
+//  - Hibernate, Hikari and the JDBC drivers still block inside synchronized blocks, which pins the virtual thread
+//    to its carrier - bounding the callers in flight bounds the carriers that can be pinned
+//The semaphore is fair so a burst is served in arrival order and no caller starves.
+//  AsyncService<Product, ProductDto> asyncService = new AsyncProductService(emf);
+public class AsyncProductService implements AsyncService<Product, ProductDto> {
+    //Hibernate's built-in (non production) connection pool size, for units without a HikariCP pool
+    private static final int DEFAULT_POOL_SIZE = 20;
+
+    private final Service<Product, ProductDto> productService;
+    //created by AsyncProductService(EntityManagerFactory) - closed by close()
+    private final boolean ownsProductService;
+    private final Semaphore connections;
+    private final ExecutorService executor;
+
+    public AsyncProductService(EntityManagerFactory entityManagerFactory) {
+        this(new ProductService(entityManagerFactory), maximumPoolSize(entityManagerFactory), true);
+    }
+
+    //maxConcurrency - number of calls running at once, the size of the connection pool the service uses
+    public AsyncProductService(Service<Product, ProductDto> productService, int maxConcurrency) {
+        this(productService, maxConcurrency, false);
+    }
+
+    private AsyncProductService(Service<Product, ProductDto> productService, int maxConcurrency,
+                                boolean ownsProductService) {
+        this.productService = productService;
+        this.ownsProductService = ownsProductService;
+        this.connections = new Semaphore(maxConcurrency, true);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("async-product-service-", 0)
+                .factory());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Product>> get(Long id) {
+        return submit(() -> productService.get(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Product>> getAll() {
+        return submit(productService::getAll);
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, Product>> getAllById(Collection<Long> ids) {
+        return submit(() -> productService.getAllById(ids));
+    }
+
+    @Override
+    public CompletableFuture<Optional<ProductDto>> getDto(long id) {
+        return submit(() -> productService.getDto(id));
+    }
+
+    @Override
+    public CompletableFuture<List<ProductDto>> getAllAsDto() {
+        return submit(productService::getAllAsDto);
+    }
+
+    @Override
+    public CompletableFuture<Page<Product>> getPage(Long afterId, int limit) {
+        return submit(() -> productService.getPage(afterId, limit));
+    }
+
+    @Override
+    public CompletableFuture<Page<Product>> getPageByOffset(int pageNumber, int limit) {
+        return submit(() -> productService.getPageByOffset(pageNumber, limit));
+    }
+
+    @Override
+    public CompletableFuture<Void> streamAll(Consumer<Product> consumer) {
+        return run(() -> productService.streamAll(consumer));
+    }
+
+    @Override
+    public CompletableFuture<Void> save(Product product) {
+        return run(() -> productService.save(product));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAll(Collection<Product> products) {
+        return run(() -> productService.saveAll(products));
+    }
+
+    @Override
+    public CompletableFuture<Product> updateWithMergeDetached(Product product, ProductDto productDto) {
+        return submit(() -> productService.updateWithMergeDetached(product, productDto));
+    }
+
+    @Override
+    public CompletableFuture<Product> updateWithGetPersistent(Product product, ProductDto productDto) {
+        return submit(() -> productService.updateWithGetPersistent(product, productDto));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateAll(Map<Long, ProductDto> updates) {
+        return submit(() -> productService.updateAll(updates));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(Product product) {
+        return run(() -> productService.delete(product));
+    }
+
+    //calls waiting for a connection
+    public int getQueueLength() {
+        return connections.getQueueLength();
+    }
+
+    //no new call is accepted, returns once the submitted ones are done - then closes the ProductService it created
+    @Override
+    public void close() {
+        executor.close();
+        if (ownsProductService && productService instanceof ProductService owned) {
+            owned.close();
+        }
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return submit(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                connections.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return operation.get();
+            } finally {
+                connections.release();
+            }
+        }, executor);
+    }
+
+    //maximumPoolSize of the HikariCP pool of the unit - given as DataSource (CustomPersistenceUnitInfo) or created
+    //by hibernate-hikaricp (persistence.xml). With replicas the primary's: every write and the reads of a thread
+    //that just wrote go there
+    static int maximumPoolSize(EntityManagerFactory entityManagerFactory) {
+        HikariDataSource pool = ConnectionPools.primaryPool(entityManagerFactory);
+        if (pool != null) {
+            return pool.getMaximumPoolSize();
+        }
+        Object poolSize = entityManagerFactory.getProperties().get("hibernate.connection.pool_size");
+        return poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize.toString());
+    }
+}
@@ -0,0 +1,172 @@
+package org.jhd.service.impl;
+
+import org.jhd.cache.NearCache;
+import org.jhd.cache.NearCacheSettings;
+import org.jhd.cache.NearCacheStatistics;
+import org.jhd.dto.Page;
+import org.jhd.dto.ProductDto;
+import org.jhd.dto.ProductSnapshot;
+import org.jhd.entity.Product;
+import org.jhd.service.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+//Decorator serving get(id) from an in-memory cache of immutable snapshots - a hit does not create an
+//EntityManager, a persistence context nor touch the second-level cache.
+//Writes go through this service: updates refresh the entry with the updated state (write-through) unless it already
+//holds a later version, and delete invalidates it. Writes that bypass it (another instance of the application, bulk SQL) are only picked up when
+//the entry expires, so keep expireAfterWrite short when that can happen.
+//  Service<Product, ProductDto> productService = new CachingProductService(new ProductService(emf),
+//          new NearCacheSettings(EvictionPolicy.W_TINY_LFU, 10_000, Duration.ofMinutes(5)));
+public class CachingProductService implements Service<Product, ProductDto> {
+    private final Service<Product, ProductDto> productService;
+    private final NearCache<Long, ProductSnapshot> cache;
+
+    public CachingProductService(Service<Product, ProductDto> productService, NearCacheSettings settings) {
+        this.productService = productService;
+        this.cache = NearCache.create(settings);
+    }
+
+    //hit ratio, load latency (average load penalty), evictions
+    public NearCacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
+
+    @Override
+    public Optional<Product> get(Long id) {
+        ProductSnapshot snapshot = cache.get(id, key -> productService.get(key)
+                .map(ProductSnapshot::from)
+                .orElse(null));
+        return Optional.ofNullable(snapshot).map(ProductSnapshot::toProduct);
+    }
+
+    //the cached products are served from the cache, the others are read with one getAllById() of the wrapped service
+    @Override
+    public Map<Long, Product> getAllById(Collection<Long> ids) {
+        Map<Long, ProductSnapshot> snapshots = cache.getAll(ids, missingIds -> {
+            Map<Long, ProductSnapshot> loaded = new LinkedHashMap<>();
+            productService.getAllById(missingIds)
+                    .forEach((id, product) -> loaded.put(id, ProductSnapshot.from(product)));
+            return loaded;
+        });
+        Map<Long, Product> products = new LinkedHashMap<>();
+        snapshots.forEach((id, snapshot) -> products.put(id, snapshot.toProduct()));
+        return products;
+    }
+
+    @Override
+    public List<Product> getAll() {
+        return productService.getAll();
+    }
+
+    @Override
+    public Optional<ProductDto> getDto(long id) {
+        return productService.getDto(id);
+    }
+
+    @Override
+    public List<ProductDto> getAllAsDto() {
+        return productService.getAllAsDto();
+    }
+
+    @Override
+    public Page<Product> getPage(Long afterId, int limit) {
+        return productService.getPage(afterId, limit);
+    }
+
+    @Override
+    public Page<Product> getPageByOffset(int pageNumber, int limit) {
+        return productService.getPageByOffset(pageNumber, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        productService.streamAll(consumer);
+    }
+
+    @Override
+    public Stream<Product> stream() {
+        return productService.stream();
+    }
+
+    @Override
+    public void save(Product product) {
+        productService.save(product);
+        cache.put(product.getId(), ProductSnapshot.from(product));
+    }
+
+    //new ids cannot be in the cache (missing products are not cached) - nothing to invalidate
+    @Override
+    public void saveAll(Collection<Product> products) {
+        productService.saveAll(products);
+    }
+
+    @Override
+    public void saveAll(Stream<Product> products) {
+        productService.saveAll(products);
+    }
+
+    //a failed update (OptimisticLockException: the product was changed elsewhere) drops the entry, it may be the
+    //stale state the caller read
+    @Override
+    public Product updateWithMergeDetached(Product product, ProductDto productDto) {
+        Product updatedProduct;
+        try {
+            updatedProduct = productService.updateWithMergeDetached(product, productDto);
+        } catch (RuntimeException e) {
+            cache.invalidate(product.getId());
+            throw e;
+        }
+        cacheUpdated(updatedProduct);
+        return updatedProduct;
+    }
+
+    @Override
+    public Product updateWithGetPersistent(Product product, ProductDto productDto) {
+        Product updatedProduct;
+        try {
+            updatedProduct = productService.updateWithGetPersistent(product, productDto);
+        } catch (RuntimeException e) {
+            cache.invalidate(product.getId());
+            throw e;
+        }
+        cacheUpdated(updatedProduct);
+        return updatedProduct;
+    }
+
+    //two updates of the same product can reach the cache in any order - the entry keeps the highest version, so a
+    //slow caller does not put back the state the other one just replaced
+    private void cacheUpdated(Product updatedProduct) {
+        cache.merge(updatedProduct.getId(), ProductSnapshot.from(updatedProduct),
+                (cached, updated) -> isNewer(updated, cached) ? updated : cached);
+    }
+
+    private static boolean isNewer(ProductSnapshot snapshot, ProductSnapshot than) {
+        return than.version() == null || (snapshot.version() != null && snapshot.version() > than.version());
+    }
+
+    //the updated products are not read back - their entries are dropped, the next get() loads them
+    @Override
+    public int updateAll(Map<Long, ProductDto> updates) {
+        try {
+            return productService.updateAll(updates);
+        } finally {
+            updates.keySet().forEach(cache::invalidate);
+        }
+    }
+
+    @Override
+    public void delete(Product product) {
+        try {
+            productService.delete(product);
+        } finally {
+            cache.invalidate(product.getId());
+        }
+    }
+}
@@ -1,17 +1,21 @@
 package org.jhd.service.impl;
 
 import jakarta.persistence.EntityManagerFactory;
-import org.jhd.dao.Dao;
 import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.Page;
 import org.jhd.dto.ProductDto;
 import org.jhd.entity.Product;
 import org.jhd.service.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-public class ProductService implements Service<Product, ProductDto> {
-    private Dao<Product, ProductDto> productDao;
+public class ProductService implements Service<Product, ProductDto>, AutoCloseable {
+    private final ProductDao productDao;
 
     public ProductService(EntityManagerFactory entityManagerFactory) {
         this.productDao = new ProductDao(entityManagerFactory);
@@ -27,11 +31,57 @@ public class ProductService implements Service<Product, ProductDto> {
         return productDao.getAll();
     }
 
+    @Override
+    public Map<Long, Product> getAllById(Collection<Long> ids) {
+        return productDao.getAllById(ids);
+    }
+
+    @Override
+    public Optional<ProductDto> getDto(long id) {
+        return productDao.getDto(id);
+    }
+
+    @Override
+    public List<ProductDto> getAllAsDto() {
+        return productDao.getAllAsDto();
+    }
+
+    @Override
+    public Page<Product> getPage(Long afterId, int limit) {
+        return productDao.getPage(afterId, limit);
+    }
+
+    @Override
+    public Page<Product> getPageByOffset(int pageNumber, int limit) {
+        return productDao.getPageByOffset(pageNumber, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        productDao.streamAll(consumer);
+    }
+
+    //must be closed by the caller
+    @Override
+    public Stream<Product> stream() {
+        return productDao.stream();
+    }
+
     @Override
     public void save(Product product) {
         productDao.save(product);
     }
 
+    @Override
+    public void saveAll(Collection<Product> products) {
+        productDao.saveAll(products);
+    }
+
+    @Override
+    public void saveAll(Stream<Product> products) {
+        productDao.saveAll(products);
+    }
+
     @Override
     public Product updateWithMergeDetached(Product product, ProductDto productDto) {
         return productDao.updateWithMergeDetached(product, productDto);
@@ -42,8 +92,19 @@ public class ProductService implements Service<Product, ProductDto> {
         return productDao.updateWithGetPersistent(product, productDto);
     }
 
+    @Override
+    public int updateAll(Map<Long, ProductDto> updates) {
+        return productDao.updateAll(updates);
+    }
+
     @Override
     public void delete(Product product) {
         productDao.delete(product);
     }
+
+    //closes the DAO (its EntityManagerLifecycle) - the EntityManagerFactory is the caller's
+    @Override
+    public void close() {
+        productDao.close();
+    }
 }
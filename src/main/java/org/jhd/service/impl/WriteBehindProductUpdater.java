@@ -0,0 +1,252 @@
+package org.jhd.service.impl;
+
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.metrics.DataAccessMetrics;
+import org.jhd.persistence.RetryPolicy;
+import org.jhd.service.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Write-behind for a feed updating the same products many times per second. updateWithGetPersistent costs a
+//SELECT, an UPDATE and a commit per update, and most of them are overwritten a few milliseconds later. Here:
+//  - update() only records the new values in a map keyed by product id - a later update of the same product
+//    replaces the fields it sets (coalescing), a price update and a name update of one product are merged
+//  - a background thread writes the map every flushInterval, or as soon as maxPending products are waiting, with
+//    Service.updateAll: one transaction, one IN query per batch of ids, JDBC-batched UPDATEs
+//  - a flush that fails puts its updates back (behind the ones that arrived meanwhile) for the next flush. After
+//    ISOLATE_AFTER_FAILED_FLUSHES failed flushes in a row the updates are written one product at a time, so one
+//    update that can never be written (a constraint violation...) does not hold back the others: an update that
+//    fails alone while others go through is dropped and logged - unless it failed on something temporary
+//    (RetryPolicy.isTransientFailure: a conflict with another writer, a lock timeout, a lost connection), then it
+//    is put back for the next flush. When none goes through the database is the problem, they are all kept
+//  - close() stops accepting updates and writes what is left, retrying, and throws if it could not - register it
+//    with JpaService.closeOnShutdown so shutdown() flushes it before the connection pool goes away
+//Accepted is not written: an update lives in memory for up to flushInterval and is lost if the process dies
+//before close(). The latest value wins - there is no version check against what the caller read.
+//  WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService, WriteBehindSettings.defaults());
+//  JpaService.getInstance().closeOnShutdown(updater);
+//  updater.updatePrice(id, 9.99);
+public class WriteBehindProductUpdater implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindProductUpdater.class.getName());
+    private static final int ISOLATE_AFTER_FAILED_FLUSHES = 3;
+
+    private final Service<Product, ProductDto> productService;
+    private final WriteBehindSettings settings;
+    private final DataAccessMetrics metrics = DataAccessMetrics.global();
+
+    //id -> fields to write, null fields are left unchanged
+    private final ConcurrentHashMap<Long, ProductDto> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    //one flush at a time, whichever thread runs it
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    //guarded by flushLock
+    private int consecutiveFailedFlushes;
+    //update() calls past the closed check - close() waits for them before the last flush
+    private final LongAdder inFlight = new LongAdder();
+    private volatile boolean closed;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public WriteBehindProductUpdater(Service<Product, ProductDto> productService, WriteBehindSettings settings) {
+        this.productService = productService;
+        this.settings = settings;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = settings.flushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void update(long id, ProductDto productDto) {
+        inFlight.increment();
+        try {
+            if (closed) {
+                throw new IllegalStateException("WriteBehindProductUpdater is closed");
+            }
+            accepted.increment();
+            pending.merge(id, productDto, (older, newer) -> {
+                coalesced.increment();
+                return combine(older, newer);
+            });
+        } finally {
+            inFlight.decrement();
+        }
+        if (pending.size() >= settings.maxPending() && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                //close() started after the update was accepted - its last flush writes it
+            }
+        }
+    }
+
+    public void updatePrice(long id, double price) {
+        update(id, new ProductDto(null, price));
+    }
+
+    public void updateName(long id, String name) {
+        update(id, new ProductDto(name, null));
+    }
+
+    //writes the pending updates now, on the calling thread - returns the number of rows updated. On failure the
+    //updates are kept for the next flush and the exception is thrown, unless they are written one at a time
+    //(see above)
+    public int flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            Map<Long, ProductDto> batch = new HashMap<>();
+            for (Long id : pending.keySet()) {
+                //an update arriving after the remove starts a new entry, written by the next flush
+                ProductDto productDto = pending.remove(id);
+                if (productDto != null) {
+                    batch.put(id, productDto);
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                int rowCount = productService.updateAll(batch);
+                consecutiveFailedFlushes = 0;
+                written.add(rowCount);
+                flushes.increment();
+                return rowCount;
+            } catch (RuntimeException e) {
+                failedFlushes.increment();
+                if (++consecutiveFailedFlushes >= ISOLATE_AFTER_FAILED_FLUSHES && batch.size() > 1) {
+                    return flushOneByOne(batch, e);
+                }
+                putBack(batch);
+                throw e;
+            } finally {
+                metrics.record("WriteBehindProductUpdater.flush", System.nanoTime() - start);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //one updateAll per product. Throws batchFailure, with every update put back, when all of them fail
+    private int flushOneByOne(Map<Long, ProductDto> batch, RuntimeException batchFailure) {
+        consecutiveFailedFlushes = 0;
+        int rowCount = 0;
+        Map<Long, RuntimeException> failures = new HashMap<>();
+        for (Map.Entry<Long, ProductDto> update : batch.entrySet()) {
+            try {
+                rowCount += productService.updateAll(Map.of(update.getKey(), update.getValue()));
+            } catch (RuntimeException e) {
+                failures.put(update.getKey(), e);
+            }
+        }
+        if (failures.size() == batch.size()) {
+            putBack(batch);
+            throw batchFailure;
+        }
+        Map<Long, ProductDto> retried = new HashMap<>();
+        failures.forEach((id, e) -> {
+            if (RetryPolicy.isTransientFailure(e)) {
+                retried.put(id, batch.get(id));
+                return;
+            }
+            dropped.increment();
+            LOGGER.log(Level.SEVERE, "Update " + batch.get(id) + " of product " + id + " dropped, it failed alone", e);
+        });
+        putBack(retried);
+        written.add(rowCount);
+        flushes.increment();
+        return rowCount;
+    }
+
+    //behind the updates that arrived since the batch was taken
+    private void putBack(Map<Long, ProductDto> batch) {
+        batch.forEach((id, productDto) -> pending.merge(id, productDto, (newer, older) -> combine(older, newer)));
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(accepted.sum(), coalesced.sum(), written.sum(), flushes.sum(), failedFlushes.sum(),
+                dropped.sum(), pending.size());
+    }
+
+    //no update is accepted from here on, the pending ones are written before it returns. IllegalStateException
+    //(with the last failure as cause) if they could not be written within closeRetryPolicy
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (inFlight.sum() != 0) {
+            Thread.onSpinWait();
+        }
+        RuntimeException failure = null;
+        for (int attempt = 1; attempt <= settings.closeRetryPolicy().maxAttempts(); attempt++) {
+            try {
+                flush();
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+                LOGGER.log(Level.WARNING, "Flush of " + pending.size() + " product updates failed, attempt "
+                        + attempt + " of " + settings.closeRetryPolicy().maxAttempts(), e);
+                if (attempt == settings.closeRetryPolicy().maxAttempts()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(settings.closeRetryPolicy().backoff(attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        throw new IllegalStateException(pending.size() + " product updates could not be written", failure);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Flush of " + pending.size() + " product updates failed, retried at the next"
+                    + " flush", e);
+        }
+    }
+
+    //the fields newer sets win
+    private static ProductDto combine(ProductDto older, ProductDto newer) {
+        return new ProductDto(newer.name() != null ? newer.name() : older.name(),
+                newer.price() != null ? newer.price() : older.price());
+    }
+
+    //accepted - update() calls, coalesced - of which merged into an update already pending, written - rows updated,
+    //dropped - updates that failed alone
+    public record Statistics(long accepted, long coalesced, long written, long flushes, long failedFlushes,
+                             long dropped, int pending) {
+    }
+}
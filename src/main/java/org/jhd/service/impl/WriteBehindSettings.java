@@ -0,0 +1,25 @@
+package org.jhd.service.impl;
+
+import org.jhd.persistence.RetryPolicy;
+
+import java.time.Duration;
+
+//flushInterval - pending updates are written at least this often: the longest an accepted update waits, and what
+//is lost if the process dies without close()
+//maxPending - products with a pending update that trigger a flush before the interval
+//closeRetryPolicy - attempts of the last flush, run by close(), before it gives up and throws
+public record WriteBehindSettings(
+        Duration flushInterval,
+        int maxPending,
+        RetryPolicy closeRetryPolicy) {
+
+    public WriteBehindSettings {
+        if (flushInterval.isNegative() || flushInterval.isZero() || maxPending < 1) {
+            throw new IllegalArgumentException("flushInterval and maxPending must be > 0");
+        }
+    }
+
+    public static WriteBehindSettings defaults() {
+        return new WriteBehindSettings(Duration.ofMillis(200), 1_000, RetryPolicy.defaults());
+    }
+}
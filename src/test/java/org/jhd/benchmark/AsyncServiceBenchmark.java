@@ -0,0 +1,109 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.service.AsyncService;
+import org.jhd.service.Service;
+import org.jhd.service.impl.AsyncProductService;
+import org.jhd.service.impl.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//a request handler fanning out `callers` independent product lookups and waiting for all of them - one after the
+//other on the request thread (today), on a pool of platform threads the size of the connection pool, and on
+//virtual threads through AsyncProductService. The score is lookups per second.
+//The unit gets a HikariCP pool of POOL_SIZE connections so the three variants share the same limit.
+//In-memory H2 answers without any I/O wait, so here this measures what the fan-out costs (thread hand-offs,
+//contention on the pool and on H2) rather than what it saves: against a database over the network a lookup
+//spends most of its time waiting for the round trip, which the concurrent variants overlap. Compare
+//platformThreadPool with virtualThreads, and all three against a real database.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=AsyncServiceBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncServiceBenchmark {
+    private static final int ROW_COUNT = 10_000;
+    private static final int POOL_SIZE = 16;
+    private static final int CALLERS = 1000;
+
+    private EntityManagerFactory emf;
+    private Service<Product, ProductDto> productService;
+    private ExecutorService platformThreads;
+    private AsyncService<Product, ProductDto> asyncService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false, Map.of(
+                "hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider",
+                "hibernate.hikari.maximumPoolSize", String.valueOf(POOL_SIZE),
+                "hibernate.hikari.minimumIdle", String.valueOf(POOL_SIZE)));
+        BenchmarkDatabase.seedProducts(emf, ROW_COUNT);
+        productService = new ProductService(emf);
+        platformThreads = Executors.newFixedThreadPool(POOL_SIZE);
+        asyncService = new AsyncProductService(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        asyncService.close();
+        platformThreads.shutdownNow();
+        emf.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLERS)
+    public int sequential() {
+        int found = 0;
+        for (int i = 0; i < CALLERS; i++) {
+            found += productService.get(randomId()).isPresent() ? 1 : 0;
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLERS)
+    public List<Optional<Product>> platformThreadPool() {
+        List<CompletableFuture<Optional<Product>>> lookups = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            long id = randomId();
+            lookups.add(CompletableFuture.supplyAsync(() -> productService.get(id), platformThreads));
+        }
+        return lookups.stream().map(CompletableFuture::join).toList();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLERS)
+    public List<Optional<Product>> virtualThreads() {
+        List<CompletableFuture<Optional<Product>>> lookups = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            lookups.add(asyncService.get(randomId()));
+        }
+        return lookups.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROW_COUNT + 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AsyncServiceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,62 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//in memory H2 shared by the JMH benchmarks - see jpa-hibernate-persistence-unit-h2-bench in the test persistence.xml
+public final class BenchmarkDatabase {
+    public static final String PERSISTENCE_UNIT = "jpa-hibernate-persistence-unit-h2-bench";
+
+    private BenchmarkDatabase() {
+    }
+
+    public static EntityManagerFactory create(boolean pooledIds) {
+        return create(pooledIds, Map.of());
+    }
+
+    public static EntityManagerFactory create(boolean pooledIds, Map<String, Object> overrides) {
+        Map<String, Object> props = new HashMap<>(overrides);
+        if (pooledIds) {
+            props.put("hibernate.orm_xml_files", List.of("META-INF/orm-pooled-ids.xml"));
+        }
+        return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, props);
+    }
+
+    //inserts rowCount products with plain SQL - much faster than going through the entity layer
+    public static void seedProducts(EntityManagerFactory emf, int rowCount) {
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            em.getTransaction().begin();
+            em.createNativeQuery("""
+                    INSERT INTO product (product_id, product_name, product_price, product_version)
+                    SELECT X, 'product-' || X, MOD(X, 1000) + 0.99, 0 FROM SYSTEM_RANGE(1, ?1)
+                    """)
+                    .setParameter(1, rowCount)
+                    .executeUpdate();
+            //the ids were given explicitly - move an identity column past them so later inserts don't collide
+            Number identityColumns = (Number) em.createNativeQuery("""
+                    SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+                    WHERE TABLE_NAME = 'PRODUCT' AND COLUMN_NAME = 'PRODUCT_ID' AND IS_IDENTITY = 'YES'
+                    """).getSingleResult();
+            if (identityColumns.intValue() > 0) {
+                em.createNativeQuery("ALTER TABLE product ALTER COLUMN product_id RESTART WITH " + (rowCount + 1))
+                        .executeUpdate();
+            }
+            em.getTransaction().commit();
+        }
+    }
+
+    public static void truncateProducts(EntityManagerFactory emf) {
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            em.getTransaction().begin();
+            em.createNativeQuery("TRUNCATE TABLE product").executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+}
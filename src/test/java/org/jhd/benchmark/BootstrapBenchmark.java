@@ -0,0 +1,85 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.PoolSettings;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Time to build an EntityManagerFactory in a new JVM - what a short-lived batch container pays before its first
+//query. One cold bootstrap per fork (single shot, no warm-up iteration), the score is the average over the forks.
+//  persistenceXml      - Persistence.createEntityManagerFactory, like JpaService (the H2 unit of the main
+//                        persistence.xml, HikariCP created by Hibernate)
+//  persistenceUnitInfo - HibernatePersistenceProvider with a CustomPersistenceUnitInfo, like Application
+//bootstrap=default reads the JDBC metadata at boot and starts the pool, fast does neither (see the batch profile).
+//No schema generation: it needs the database whatever the bootstrap. The database is in memory H2 - a connection
+//to a remote database costs more, and so does the eager pool.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=BootstrapBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class BootstrapBenchmark {
+    private static final String JDBC_URL = "jdbc:h2:mem:bootstrap;DB_CLOSE_DELAY=-1";
+
+    @Param({"default", "fast"})
+    private String bootstrap;
+
+    private EntityManagerFactory emf;
+
+    @TearDown(Level.Iteration)
+    public void teardown() {
+        emf.close();
+    }
+
+    @Benchmark
+    public EntityManagerFactory persistenceXml() {
+        Map<String, Object> properties = properties();
+        properties.put("jakarta.persistence.jdbc.url", JDBC_URL);
+        properties.put("hibernate.show_sql", "false");
+        return emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2", properties);
+    }
+
+    @Benchmark
+    public EntityManagerFactory persistenceUnitInfo() {
+        PoolSettings poolSettings = PoolSettings.forUrl(JDBC_URL, "sa", "").withLazyStart(isFast());
+        return emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo("bootstrap", poolSettings), properties());
+    }
+
+    private Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("jakarta.persistence.schema-generation.database.action", "none");
+        properties.put("hibernate.temp.use_jdbc_metadata_defaults", Boolean.toString(!isFast()));
+        if (isFast()) {
+            properties.put("jakarta.persistence.database-product-name", "H2");
+            properties.put("jakarta.persistence.database-product-version", "2.2.224");
+            properties.put("hibernate.jdbc.use_get_generated_keys", "true");
+            //the HikariCP pool created by Hibernate has no lazy start - it is created at boot, without waiting
+            //for its first connection
+            properties.put("hibernate.hikari.initializationFailTimeout", "-1");
+        }
+        return properties;
+    }
+
+    private boolean isFast() {
+        return bootstrap.equals("fast");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BootstrapBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,99 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import org.jhd.entity.Product;
+import org.jhd.persistence.EntityManagerLifecycle;
+import org.jhd.persistence.RetryPolicy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Concurrent read-modify-write price updates (price = price + 1) on hotRows products: optimistic locking with
+//executeInTransactionWithRetry against a pessimistic SELECT ... FOR UPDATE. The fewer the hot rows, the more the
+//threads collide. Besides the throughput, the retries and failures columns count (per iteration) the attempts run
+//again and the updates that still conflicted on their last attempt - retries / operations is the retry rate.
+//On 1 CPU with in-memory H2: one hot row favours the lock (most attempts are retried), with 1000 rows optimistic
+//locking is about twice the throughput.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=ContentionBenchmark -Djmh.threads=8
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ContentionBenchmark {
+    @Param({"1", "10", "1000"})
+    public int hotRows;
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(1), Duration.ofMillis(50), 2);
+
+    private EntityManagerFactory emf;
+    private EntityManagerLifecycle lifecycle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, hotRows);
+        lifecycle = new EntityManagerLifecycle(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        lifecycle.close();
+        emf.close();
+    }
+
+    //per thread, summed by JMH over the iteration
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Conflicts {
+        public long retries;
+        public long failures;
+    }
+
+    @Benchmark
+    public void optimisticWithRetry(Conflicts conflicts) {
+        long id = randomId();
+        int[] attempts = new int[1];
+        try {
+            lifecycle.executeInTransactionWithRetry(retryPolicy, em -> {
+                attempts[0]++;
+                Product product = em.find(Product.class, id);
+                product.setPrice(product.getPrice() + 1);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (!RetryPolicy.isOptimisticLockFailure(e)) {
+                throw e;
+            }
+            conflicts.failures++;
+        }
+        conflicts.retries += attempts[0] - 1;
+    }
+
+    //every writer of a row waits for the one holding its lock, even when it would not have conflicted
+    @Benchmark
+    public void pessimistic() {
+        long id = randomId();
+        lifecycle.executeInTransaction(em -> {
+            Product product = em.find(Product.class, id, LockModeType.PESSIMISTIC_WRITE);
+            product.setPrice(product.getPrice() + 1);
+            return null;
+        });
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, hotRows + 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ContentionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,54 @@
+package org.jhd.benchmark;
+
+import org.jhd.service.JpaService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+//JpaService.getInstance(name) of a running unit from several threads, against the synchronized static getInstance()
+//it replaced - every request looks the service up, with the class lock the threads queue on that monitor.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=JpaServiceBenchmark -Djmh.threads=8
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class JpaServiceBenchmark {
+    private static JpaService instance;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        instance = JpaService.getInstance(BenchmarkDatabase.PERSISTENCE_UNIT);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        JpaService.shutdownAll();
+    }
+
+    @Benchmark
+    public JpaService getInstance() {
+        return JpaService.getInstance(BenchmarkDatabase.PERSISTENCE_UNIT);
+    }
+
+    @Benchmark
+    public JpaService synchronizedGetInstance() {
+        return synchronizedInstance();
+    }
+
+    //the former JpaService.getInstance()
+    private static synchronized JpaService synchronizedInstance() {
+        return (instance == null) ? instance = JpaService.getInstance(BenchmarkDatabase.PERSISTENCE_UNIT) : instance;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JpaServiceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
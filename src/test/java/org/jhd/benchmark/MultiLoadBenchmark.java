@@ -0,0 +1,78 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//Resolving the products of a cart: one get() per id (an EntityManager and a SELECT each) against one
+//getAllById() (IN lists, one EntityManager for all of them). The bench unit has no second-level cache, every
+//product is read from the database.
+//In-memory H2 has no network round trip, a get() costs a few microseconds - the gap grows with the cart size
+//here, against a remote database every get() saved is also a round trip saved.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=MultiLoadBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiLoadBenchmark {
+    private static final int ROW_COUNT = 10_000;
+
+    //number of products per lookup
+    @Param({"50", "500"})
+    private int cartSize;
+
+    private EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, ROW_COUNT);
+        productDao = new ProductDao(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        emf.close();
+    }
+
+    @Benchmark
+    public List<Product> getOneByOne() {
+        return randomIds().stream()
+                .map(productDao::get)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    @Benchmark
+    public Map<Long, Product> getAllById() {
+        return productDao.getAllById(randomIds());
+    }
+
+    private List<Long> randomIds() {
+        return Stream.generate(() -> ThreadLocalRandom.current().nextLong(1, ROW_COUNT + 1))
+                .limit(cartSize)
+                .toList();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MultiLoadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
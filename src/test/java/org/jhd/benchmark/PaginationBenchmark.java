@@ -0,0 +1,65 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.Page;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+//latency of reading page 1 and page 10,000 of the product table with keyset pagination (getPage) and with
+//OFFSET/LIMIT (getPageByOffset). Keyset stays flat, OFFSET grows with the depth of the page.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=PaginationBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginationBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGE_COUNT = 10_000;
+
+    //1-based, as shown in a UI
+    @Param({"1", "10000"})
+    public int page;
+
+    private EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+    private long afterId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        //ids 1..PAGE_SIZE * PAGE_COUNT
+        BenchmarkDatabase.seedProducts(emf, PAGE_SIZE * PAGE_COUNT);
+        productDao = new ProductDao(emf);
+        //the key a client would have received with the previous page
+        afterId = (long) (page - 1) * PAGE_SIZE;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        emf.close();
+    }
+
+    @Benchmark
+    public Page<Product> keyset() {
+        return productDao.getPage(afterId, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Page<Product> offset() {
+        return productDao.getPageByOffset(page - 1, PAGE_SIZE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PaginationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,148 @@
+package org.jhd.benchmark;
+
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.service.JpaService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Baseline of every ProductDao operation and of JpaService.runInTransaction against the in memory H2 unit.
+//Throughput and sample time (latency percentiles), parameterized by the number of rows in the table. The thread
+//count is a JMH option: -t / -Djmh.threads with the jmh profile.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=ProductDaoBenchmark -Djmh.threads=4
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductDaoBenchmark {
+    @Param({"1000", "10000"})
+    public int rowCount;
+
+    private JpaService jpaService;
+    private Dao<Product, ProductDto> productDao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        jpaService = JpaService.getInstance(BenchmarkDatabase.PERSISTENCE_UNIT);
+        BenchmarkDatabase.seedProducts(jpaService.getEntityManagerFactory(), rowCount);
+        productDao = new ProductDao(jpaService.getEntityManagerLifecycle());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        jpaService.shutdown();
+    }
+
+    //the product to delete is saved before each call, outside the measurement
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private Product productToDelete;
+
+        @Setup(Level.Invocation)
+        public void saveProductToDelete(ProductDaoBenchmark benchmark) {
+            productToDelete = product();
+            benchmark.productDao.save(productToDelete);
+        }
+    }
+
+    //saveEMPerClass/deleteEMPerClass reuse the context of the calling thread, so the product to delete is saved
+    //by the thread that deletes it
+    @State(Scope.Thread)
+    public static class EMPerClassState {
+        private Product productToDelete;
+
+        @Setup(Level.Invocation)
+        public void saveProductToDelete(ProductDaoBenchmark benchmark) {
+            productToDelete = product();
+            benchmark.productDao.saveEMPerClass(productToDelete);
+        }
+    }
+
+    @Benchmark
+    public Optional<Product> get() {
+        return productDao.get(randomId());
+    }
+
+    @Benchmark
+    public List<Product> getAll() {
+        return productDao.getAll();
+    }
+
+    @Benchmark
+    public Product save() {
+        Product product = product();
+        productDao.save(product);
+        return product;
+    }
+
+    @Benchmark
+    public Product updateWithMergeDetached() {
+        return productDao.updateWithMergeDetached(detachedProduct(), productDto());
+    }
+
+    @Benchmark
+    public Product updateWithGetPersistent() {
+        return productDao.updateWithGetPersistent(detachedProduct(), productDto());
+    }
+
+    @Benchmark
+    public void delete(ThreadState state) {
+        productDao.delete(state.productToDelete);
+    }
+
+    @Benchmark
+    public Product saveEMPerClass() {
+        Product product = product();
+        productDao.saveEMPerClass(product);
+        return product;
+    }
+
+    @Benchmark
+    public void deleteEMPerClass(EMPerClassState state) {
+        productDao.deleteEMPerClass(state.productToDelete);
+    }
+
+    @Benchmark
+    public Product runInTransaction() {
+        long id = randomId();
+        return jpaService.runInTransaction(em -> em.find(Product.class, id));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rowCount + 1);
+    }
+
+    private Product detachedProduct() {
+        Product product = product();
+        product.setId(randomId());
+        return product;
+    }
+
+    private static Product product() {
+        Product product = new Product("product");
+        product.setPrice(ThreadLocalRandom.current().nextDouble(100));
+        return product;
+    }
+
+    private static ProductDto productDto() {
+        return new ProductDto("product", ThreadLocalRandom.current().nextDouble(100));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductDaoBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
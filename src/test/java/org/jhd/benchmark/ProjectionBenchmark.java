@@ -0,0 +1,60 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//reading the whole product table as entities (getAll) against the ProductDto constructor projection
+//(getAllAsDto). Run with the GC profiler (-prof gc) to compare the bytes allocated per call.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=ProjectionBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+    @Param({"10000", "100000"})
+    public int rowCount;
+
+    private EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, rowCount);
+        productDao = new ProductDao(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        emf.close();
+    }
+
+    @Benchmark
+    public List<Product> entities() {
+        return productDao.getAll();
+    }
+
+    @Benchmark
+    public List<ProductDto> projection() {
+        return productDao.getAllAsDto();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProjectionBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
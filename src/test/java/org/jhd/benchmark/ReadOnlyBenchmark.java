@@ -0,0 +1,62 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.entity.Product;
+import org.jhd.persistence.EntityManagerLifecycle;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//latency of loading the whole product table through a regular (stateful) persistence context - the previous
+//getAll() path - against the read-only path. Run with the GC profiler (-prof gc): gc.alloc.rate.norm shows the
+//bytes allocated per call, including the loaded state snapshots kept for dirty checking.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=ReadOnlyBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadOnlyBenchmark {
+    @Param({"1000", "10000"})
+    public int rowCount;
+
+    private EntityManagerFactory emf;
+    private EntityManagerLifecycle lifecycle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, rowCount);
+        lifecycle = new EntityManagerLifecycle(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        lifecycle.close();
+        emf.close();
+    }
+
+    @Benchmark
+    public List<Product> stateful() {
+        return lifecycle.execute(em -> em.createQuery("SELECT p FROM Product p", Product.class)
+                .getResultList());
+    }
+
+    @Benchmark
+    public List<Product> readOnly() {
+        return lifecycle.executeReadOnly(em -> em.createQuery("SELECT p FROM Product p", Product.class)
+                .getResultList());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReadOnlyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//rows/sec of the per-row save() against saveAll(), with IDENTITY ids (no JDBC batching) and with the
+//pooled ids of META-INF/orm-pooled-ids.xml (JDBC batching of hibernate.jdbc.batch_size rows)
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=SaveAllBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveAllBenchmark {
+    private static final int ROWS = 1_000;
+
+    @Param({"false", "true"})
+    public boolean pooledIds;
+
+    private EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(pooledIds);
+        productDao = new ProductDao(emf);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        BenchmarkDatabase.truncateProducts(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        emf.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void savePerRow() {
+        IntStream.range(0, ROWS).mapToObj(SaveAllBenchmark::product).forEach(productDao::save);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveAll() {
+        productDao.saveAll(IntStream.range(0, ROWS).mapToObj(SaveAllBenchmark::product));
+    }
+
+    private static Product product(int i) {
+        Product product = new Product("product-" + i);
+        product.setPrice(i + 0.99);
+        return product;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SaveAllBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,153 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.metrics.Histogram;
+import org.jhd.metrics.HistogramSnapshot;
+import org.jhd.persistence.Warmup;
+import org.jhd.persistence.WarmupSettings;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.LongStream;
+
+//The first requests after a deploy, with and without Warmup - not a JMH benchmark: JMH measures the steady state,
+//this is what happens before it. Every run is a new JVM (cold classes, JIT, pool, Hibernate plans):
+//  startup        - EntityManagerFactory created, and warmed up
+//  first query    - the first request, alone
+//  time to query  - startup + first query
+//  p99            - of the first 1000 requests (the first one included, the others from 4 threads)
+//The bench unit runs with a HikariCP pool of 8 connections, like the application units, on an H2 file database
+//seeded once by the parent - the runs open a database that was already there and load nothing but their own classes.
+//run with: mvn test-compile exec:exec -Dexec.executable=java
+//  -Dexec.args="-cp %classpath org.jhd.benchmark.StartupLatency"
+//or from the IDE, arguments: [runs per mode, default 5]
+public class StartupLatency {
+    private static final int ROW_COUNT = 10_000;
+    private static final int REQUESTS = 1_000;
+    private static final int THREADS = 4;
+    private static final Map<String, Object> POOL = Map.of(
+            "hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider",
+            "hibernate.hikari.maximumPoolSize", "8",
+            "hibernate.hikari.minimumIdle", "8");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("child")) {
+            child(args[1], Boolean.parseBoolean(args[2]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path directory = Files.createTempDirectory("startup-latency");
+        String jdbcUrl = "jdbc:h2:file:" + directory.resolve("bench").toAbsolutePath()
+                + ";OPTIMIZE_REUSE_RESULTS=FALSE";
+        EntityManagerFactory seeding = BenchmarkDatabase.create(false, Map.of("jakarta.persistence.jdbc.url", jdbcUrl));
+        BenchmarkDatabase.seedProducts(seeding, ROW_COUNT);
+        seeding.close();
+        for (boolean warmup : new boolean[]{false, true}) {
+            List<double[]> results = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                results.add(fork(jdbcUrl, warmup));
+            }
+            System.out.printf("warm-up %-5s (median of %d runs): startup %.1f ms, first query %.2f ms, "
+                            + "time to first query %.1f ms, p99 of the first %d requests %.2f ms%n",
+                    warmup, runs, median(results, 0), median(results, 1), median(results, 2), REQUESTS,
+                    median(results, 3));
+        }
+    }
+
+    //startup, first query, time to first query, p99 - in milliseconds
+    private static double[] fork(String jdbcUrl, boolean warmup) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StartupLatency.class.getName(), "child", jdbcUrl, Boolean.toString(warmup))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String result = null;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = line.substring("RESULT ".length());
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Run failed, exit code " + process.exitValue());
+        }
+        String[] values = result.split(" ");
+        double[] millis = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            millis[i] = Double.parseDouble(values[i]);
+        }
+        return millis;
+    }
+
+    private static void child(String jdbcUrl, boolean warmup) throws Exception {
+        long start = System.nanoTime();
+        Map<String, Object> overrides = new HashMap<>(POOL);
+        overrides.put("jakarta.persistence.jdbc.url", jdbcUrl);
+        overrides.put("jakarta.persistence.schema-generation.database.action", "none");
+        EntityManagerFactory emf = BenchmarkDatabase.create(false, overrides);
+        if (warmup) {
+            Warmup.run(emf, WarmupSettings.defaults());
+        }
+        long started = System.nanoTime();
+        ProductDao productDao = new ProductDao(emf);
+        request(productDao, 0);
+        long firstQuery = System.nanoTime();
+
+        Histogram latencies = new Histogram();
+        latencies.record(firstQuery - started);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(threads.submit(() -> {
+                for (int i = 1 + thread; i < REQUESTS; i += THREADS) {
+                    long requestStart = System.nanoTime();
+                    request(productDao, i);
+                    latencies.record(System.nanoTime() - requestStart);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        threads.shutdown();
+        HistogramSnapshot snapshot = latencies.snapshot();
+        System.out.printf("RESULT %.3f %.3f %.3f %.3f%n", (started - start) / 1e6, (firstQuery - started) / 1e6,
+                (firstQuery - start) / 1e6, snapshot.p99() / 1e6);
+        emf.close();
+    }
+
+    //the read paths of a product page
+    private static void request(ProductDao productDao, int i) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (i % 4) {
+            case 0 -> productDao.get(random.nextLong(1, ROW_COUNT + 1));
+            case 1 -> productDao.getDto(random.nextLong(1, ROW_COUNT + 1));
+            case 2 -> productDao.getPage(random.nextLong(0, ROW_COUNT), 20);
+            default -> productDao.getAllById(LongStream.range(0, 10)
+                    .map(n -> random.nextLong(1, ROW_COUNT + 1))
+                    .boxed()
+                    .toList());
+        }
+    }
+
+    private static double median(List<double[]> results, int metric) {
+        double[] values = results.stream().mapToDouble(result -> result[metric]).sorted().toArray();
+        return values[values.length / 2];
+    }
+}
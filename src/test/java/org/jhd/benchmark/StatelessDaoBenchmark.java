@@ -0,0 +1,117 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dao.Dao;
+import org.jhd.dao.StatelessDao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dao.impl.StatelessProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//The write paths of ProductDao (EntityManager per call) against StatelessProductDao (StatelessSession per call):
+//insert, delete and a price update of an existing product. The gc profiler shows the allocation saved by not
+//building a persistence context.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=StatelessDaoBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatelessDaoBenchmark {
+    private static final int ROW_COUNT = 10_000;
+
+    private EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+    private StatelessDao<Product> statelessDao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, ROW_COUNT);
+        productDao = new ProductDao(emf);
+        statelessDao = new StatelessProductDao(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        emf.close();
+    }
+
+    //the product to delete is saved before each call, outside the measurement
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private Product productToDelete;
+
+        @Setup(Level.Invocation)
+        public void saveProductToDelete(StatelessDaoBenchmark benchmark) {
+            productToDelete = product();
+            benchmark.statelessDao.insert(productToDelete);
+        }
+    }
+
+    @Benchmark
+    public Product save() {
+        Product product = product();
+        productDao.save(product);
+        return product;
+    }
+
+    @Benchmark
+    public Product statelessInsert() {
+        Product product = product();
+        statelessDao.insert(product);
+        return product;
+    }
+
+    @Benchmark
+    public void delete(ThreadState state) {
+        productDao.delete(state.productToDelete);
+    }
+
+    @Benchmark
+    public void statelessDelete(ThreadState state) {
+        statelessDao.delete(state.productToDelete);
+    }
+
+    //the stateful way of applying a price event: load the product, set the price, dirty check and flush
+    @Benchmark
+    public Product updatePrice() {
+        Product product = new Product();
+        product.setId(randomId());
+        return productDao.updateWithGetPersistent(product, new ProductDto("product", randomPrice()));
+    }
+
+    @Benchmark
+    public int statelessUpdatePrice() {
+        return statelessDao.updatePrice(randomId(), randomPrice());
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROW_COUNT + 1);
+    }
+
+    private static double randomPrice() {
+        return ThreadLocalRandom.current().nextDouble(100);
+    }
+
+    private static Product product() {
+        Product product = new Product("product");
+        product.setPrice(randomPrice());
+        return product;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StatelessDaoBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
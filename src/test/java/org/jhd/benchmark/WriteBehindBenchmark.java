@@ -0,0 +1,86 @@
+package org.jhd.benchmark;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.persistence.RetryPolicy;
+import org.jhd.service.Service;
+import org.jhd.service.impl.ProductService;
+import org.jhd.service.impl.WriteBehindProductUpdater;
+import org.jhd.service.impl.WriteBehindSettings;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//A price feed of UPDATES price changes over hotProducts products, applied one by one with updateWithGetPersistent
+//against WriteBehindProductUpdater - accepted and then flushed within the invocation, so the score is updates
+//written per second, not merely accepted.
+//run with: mvn -Pjmh test-compile exec:exec -Djmh.include=WriteBehindBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindBenchmark {
+    private static final int UPDATES = 1_000;
+
+    @Param({"10", "1000"})
+    public int hotProducts;
+
+    private EntityManagerFactory emf;
+    private Service<Product, ProductDto> productService;
+    private WriteBehindProductUpdater updater;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = BenchmarkDatabase.create(false);
+        BenchmarkDatabase.seedProducts(emf, hotProducts);
+        productService = new ProductService(emf);
+        //flushed by the benchmark
+        updater = new WriteBehindProductUpdater(productService,
+                new WriteBehindSettings(Duration.ofHours(1), Integer.MAX_VALUE, RetryPolicy.defaults()));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        updater.close();
+        emf.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void updateWithGetPersistent() {
+        for (int i = 0; i < UPDATES; i++) {
+            Product product = new Product();
+            product.setId(randomId());
+            productService.updateWithGetPersistent(product, new ProductDto("product", randomPrice()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public int writeBehind() {
+        for (int i = 0; i < UPDATES; i++) {
+            updater.updatePrice(randomId(), randomPrice());
+        }
+        return updater.flush();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, hotProducts + 1);
+    }
+
+    private static double randomPrice() {
+        return ThreadLocalRandom.current().nextDouble(100);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WriteBehindBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package org.jhd.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class CaffeineRegionFactoryTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+    private CaffeineRegionFactory regionFactory;
+
+    @Before
+    public void init() {
+        //a product region small enough to see evictions
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("jhd.cache.region.product.maximum-size", "5"));
+        productDao = new ProductDao(emf);
+        regionFactory = CaffeineRegionFactory.from(emf);
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testFindIsServedFromCache() {
+        Product product = new Product("Biscuit");
+        product.setPrice(8.37);
+        productDao.save(product);
+
+        //each get() uses a new EntityManager - only the second-level cache is shared. The first one loads the
+        //product from the database and puts it in the cache, the second one is served from the cache
+        productDao.get(product.getId());
+        productDao.get(product.getId());
+
+        RegionStatistics statistics = regionFactory.getRegionStatistics("product");
+        assertEquals(1, statistics.hitCount());
+        assertEquals(1, statistics.size());
+    }
+
+    @Test
+    public void testRegionIsBounded() {
+        productDao.saveAll(IntStream.range(0, 20)
+                .mapToObj(i -> new Product("Product " + i))
+                .toList());
+        productDao.getAll();
+
+        RegionStatistics statistics = regionFactory.getRegionStatistics("product");
+        assertEquals(15, statistics.evictionCount());
+        assertEquals(5, statistics.size());
+    }
+
+    @Test
+    public void testDeleteEvictsEntry() {
+        Product product = new Product("Milk");
+        productDao.save(product);
+        productDao.delete(product);
+
+        assertTrue(productDao.get(product.getId()).isEmpty());
+    }
+}
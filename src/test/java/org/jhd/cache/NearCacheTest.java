@@ -0,0 +1,174 @@
+package org.jhd.cache;
+
+import junit.framework.TestCase;
+import org.jhd.cache.NearCacheSettings.EvictionPolicy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class NearCacheTest extends TestCase {
+
+    @Test
+    public void testHitsAndMisses() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            cache.get(1L, String::valueOf);
+            cache.get(1L, String::valueOf);
+            cache.get(2L, String::valueOf);
+
+            NearCacheStatistics statistics = cache.getStatistics();
+            assertEquals(1, statistics.hitCount());
+            assertEquals(2, statistics.missCount());
+            assertEquals(2, statistics.loadCount());
+            assertEquals(2, statistics.size());
+        }
+    }
+
+    @Test
+    public void testGetAllLoadsMissingKeysTogether() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            cache.put(2L, "2");
+            List<Set<Long>> loaderCalls = new ArrayList<>();
+
+            Map<Long, String> values = cache.getAll(List.of(3L, 2L, 1L, 4L), keys -> {
+                loaderCalls.add(keys);
+                //no value for 4
+                return Map.of(1L, "1", 3L, "3");
+            });
+
+            assertEquals(List.of(3L, 2L, 1L), List.copyOf(values.keySet()));
+            assertEquals(List.of(Set.of(1L, 3L, 4L)), loaderCalls);
+            NearCacheStatistics statistics = cache.getStatistics();
+            assertEquals(1, statistics.hitCount());
+            assertEquals(3, statistics.missCount());
+            assertEquals(1, statistics.loadCount());
+            //4 was not cached
+            assertEquals("4", cache.get(4L, String::valueOf));
+            assertEquals("1", cache.getAll(List.of(1L), keys -> Map.of()).get(1L));
+        }
+    }
+
+    @Test
+    public void testWriteDuringGetAllWins() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+
+            //1 deleted and 3 updated after the loader read them
+            Map<Long, String> values = cache.getAll(List.of(1L, 2L, 3L), keys -> {
+                cache.invalidate(1L);
+                cache.put(3L, "updated");
+                return Map.of(1L, "deleted", 2L, "2", 3L, "stale");
+            });
+
+            assertEquals(Map.of(1L, "deleted", 2L, "2", 3L, "stale"), values);
+            assertEquals("reloaded", cache.get(1L, key -> "reloaded"));
+            assertEquals("2", cache.get(2L, key -> "reloaded"));
+            assertEquals("updated", cache.get(3L, key -> "reloaded"));
+        }
+    }
+
+    @Test
+    public void testNullIsNotCached() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            assertNull(cache.get(1L, key -> null));
+            assertEquals("1", cache.get(1L, String::valueOf));
+        }
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        //one entry per stripe - keys 0 and 16 fall in the same stripe
+        NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(EvictionPolicy.LRU, 16, Duration.ZERO));
+        cache.put(0L, "0");
+        cache.put(16L, "16");
+
+        assertEquals(1, cache.getStatistics().evictionCount());
+        assertEquals("reloaded", cache.get(0L, key -> "reloaded"));
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws InterruptedException {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(
+                    new NearCacheSettings(evictionPolicy, 100, Duration.ofMillis(50)));
+            cache.put(1L, "old");
+            Thread.sleep(100);
+            assertEquals("new", cache.get(1L, key -> "new"));
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            AtomicInteger loads = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return cache.get(1L, key -> {
+                            loads.incrementAndGet();
+                            sleep(100);
+                            return "1";
+                        });
+                    }));
+                }
+                start.countDown();
+                for (Future<String> result : results) {
+                    assertEquals("1", result.get(5, TimeUnit.SECONDS));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(1, loads.get());
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, String> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            cache.put(1L, "old");
+            cache.invalidate(1L);
+            assertEquals("new", cache.get(1L, key -> "new"));
+        }
+    }
+
+    @Test
+    public void testMergeKeepsTheRemappedValue() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            NearCache<Long, Integer> cache = NearCache.create(new NearCacheSettings(evictionPolicy, 100, Duration.ZERO));
+            cache.merge(1L, 2, Math::max);
+            cache.merge(1L, 1, Math::max);
+            assertEquals(2, (int) cache.get(1L, key -> 0));
+            cache.merge(1L, 3, Math::max);
+            assertEquals(3, (int) cache.get(1L, key -> 0));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
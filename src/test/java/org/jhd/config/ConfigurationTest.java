@@ -0,0 +1,127 @@
+package org.jhd.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import junit.framework.TestCase;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.entity.Product;
+import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.PoolSettings;
+import org.jhd.persistence.ReplicaSettings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+@RunWith(JUnit4.class)
+public class ConfigurationTest extends TestCase {
+
+    @Test
+    public void testProfileOverridesSharedSettings() {
+        Configuration configuration = Configuration.load("test-h2", Map.of(), new Properties());
+
+        assertEquals("test-h2", configuration.getProfile());
+        assertEquals("drop-and-create", configuration.get("jakarta.persistence.schema-generation.database.action"));
+        //shared setting
+        assertEquals("50", configuration.get("hibernate.jdbc.batch_size"));
+        assertEquals("false", configuration.get("hibernate.show_sql"));
+    }
+
+    @Test
+    public void testProductionProfilesDoNotEchoSqlNorGenerateTheSchema() {
+        for (String profile : new String[]{"prod-throughput", "prod-latency"}) {
+            Configuration configuration = Configuration.load(profile, Map.of(), new Properties());
+
+            assertEquals("false", configuration.get("hibernate.show_sql"));
+            assertEquals("none", configuration.get("jakarta.persistence.schema-generation.database.action"));
+            assertNotNull(configuration.get("hibernate.jdbc.fetch_size"));
+            assertNotNull(configuration.get("hibernate.query.plan_cache_max_size"));
+            assertEquals("true", configuration.poolSettings().dataSourceProperties().get("cachePrepStmts"));
+        }
+    }
+
+    @Test
+    public void testBatchProfileBootsWithoutTheDatabase() {
+        Configuration configuration = Configuration.load("batch", Map.of(), new Properties());
+
+        assertEquals("none", configuration.get("jakarta.persistence.schema-generation.database.action"));
+        assertEquals("false", configuration.get("hibernate.temp.use_jdbc_metadata_defaults"));
+        assertEquals("false", configuration.get("jhd.warmup.enabled"));
+        assertTrue(configuration.poolSettings().lazyStart());
+        assertFalse(Configuration.load("prod-throughput", Map.of(), new Properties()).poolSettings().lazyStart());
+    }
+
+    @Test
+    public void testEnvironmentThenSystemPropertiesOverrideTheFiles() {
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("hibernate.jdbc.batch_size", "100");
+        Configuration configuration = Configuration.load("prod-latency", Map.of(
+                "JHD_DATASOURCE_URL", "jdbc:mysql://db.internal:3306/shop",
+                "HIBERNATE_JDBC_BATCH_SIZE", "75",
+                "JHD_POOL_CONNECTION_TIMEOUT_MS", "250"), systemProperties);
+
+        assertEquals("jdbc:mysql://db.internal:3306/shop", configuration.get("jhd.datasource.url"));
+        assertEquals("100", configuration.get("hibernate.jdbc.batch_size"));
+        assertEquals(Duration.ofMillis(250), configuration.poolSettings().connectionTimeout());
+    }
+
+    @Test
+    public void testPoolSettingsAreNotPassedToHibernate() {
+        Configuration configuration = Configuration.load("test-h2", Map.of(), new Properties());
+
+        PoolSettings poolSettings = configuration.poolSettings();
+        assertEquals("jdbc:h2:mem:jpahd;DB_CLOSE_DELAY=-1", poolSettings.jdbcUrl());
+        assertEquals(4, poolSettings.maximumPoolSize());
+        assertEquals(4, poolSettings.minimumIdle());
+        assertTrue(configuration.jpaProperties().keySet().stream()
+                .noneMatch(key -> key.startsWith("jhd.datasource.") || key.startsWith("jhd.pool.")));
+    }
+
+    @Test
+    public void testReplicas() {
+        Configuration configuration = Configuration.load("test-h2", Map.of(), new Properties());
+        assertTrue(configuration.replicaPoolSettings().isEmpty());
+        assertEquals(ReplicaSettings.defaults(), configuration.replicaSettings());
+
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("jhd.datasource.replica-urls", "jdbc:h2:mem:replica-1, jdbc:h2:mem:replica-2");
+        systemProperties.setProperty("jhd.datasource.replica-load-balancing", "least-connections");
+        systemProperties.setProperty("jhd.datasource.read-your-writes-ms", "2000");
+        configuration = Configuration.load("test-h2", Map.of(), systemProperties);
+
+        List<PoolSettings> replicas = configuration.replicaPoolSettings();
+        assertEquals(List.of("jdbc:h2:mem:replica-1", "jdbc:h2:mem:replica-2"),
+                replicas.stream().map(PoolSettings::jdbcUrl).toList());
+        //the pool settings of the primary
+        assertEquals(configuration.poolSettings().maximumPoolSize(), replicas.get(0).maximumPoolSize());
+        assertEquals(new ReplicaSettings(ReplicaSettings.LoadBalancing.LEAST_CONNECTIONS, Duration.ofSeconds(2)),
+                configuration.replicaSettings());
+        assertFalse(configuration.jpaProperties().containsKey("jhd.datasource.replica-urls"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProfile() {
+        Configuration.load("staging", Map.of(), new Properties());
+    }
+
+    @Test
+    public void testPersistenceUnitFromProfile() {
+        Configuration configuration = Configuration.load("test-h2", Map.of(), new Properties());
+        EntityManagerFactory emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo("configuration-test", configuration), Map.of());
+        try {
+            ProductDao productDao = new ProductDao(emf);
+            Product product = new Product("Biscuit");
+            productDao.save(product);
+
+            assertTrue(productDao.get(product.getId()).isPresent());
+            assertEquals("50", emf.getProperties().get("hibernate.jdbc.batch_size"));
+        } finally {
+            emf.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.jhd.dao.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.dao.Dao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+//runs in its own surefire execution with a small heap (see pom.xml) - getAll() on this table does not fit in it,
+//streamAll()/stream() must
+@RunWith(JUnit4.class)
+public class ProductDaoStreamTest extends TestCase {
+    private static final int ROW_COUNT = 300_000;
+
+    private static EntityManagerFactory emf;
+    private Dao<Product, ProductDto> productDao;
+
+    @Before
+    public void init() {
+        //file db (an in memory db would live in the same small heap) with a small page cache and no SQL echo
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test", Map.of(
+                "jakarta.persistence.jdbc.url", "jdbc:h2:./target/h2/stream-test;CACHE_SIZE=4096",
+                "hibernate.show_sql", "false"));
+        productDao = new ProductDao(emf);
+
+        //insert the rows with plain SQL
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            em.getTransaction().begin();
+            em.createNativeQuery("""
+                    INSERT INTO product (product_name, product_price, product_version)
+                    SELECT 'product-' || X, 1.0, 0 FROM SYSTEM_RANGE(1, ?1)
+                    """)
+                    .setParameter(1, ROW_COUNT)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        }
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testStreamAll() {
+        AtomicLong count = new AtomicLong();
+        productDao.streamAll(product -> count.incrementAndGet());
+        assertEquals(ROW_COUNT, count.get());
+    }
+
+    @Test
+    public void testStream() {
+        double total;
+        try (Stream<Product> products = productDao.stream()) {
+            total = products.mapToDouble(Product::getPrice).sum();
+        }
+        assertEquals((double) ROW_COUNT, total);
+    }
+}
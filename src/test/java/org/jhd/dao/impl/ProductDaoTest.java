@@ -1,13 +1,18 @@
 package org.jhd.dao.impl;
 
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.RollbackException;
 import junit.framework.TestCase;
 import org.hibernate.jpa.HibernatePersistenceProvider;
 import org.jhd.dao.Dao;
+import org.jhd.dto.Page;
 import org.jhd.dto.ProductDto;
 import org.jhd.entity.Product;
+import org.jhd.metrics.DataAccessMetrics;
 import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.EntityManagerLifecycle;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,6 +22,9 @@ import org.junit.runners.JUnit4;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @RunWith(JUnit4.class)
 public class ProductDaoTest extends TestCase {
@@ -89,6 +97,143 @@ public class ProductDaoTest extends TestCase {
         assertEquals(3, products.size());
     }
 
+    @Test
+    public void testGetAllById() {
+        List<Product> products = IntStream.range(0, 5)
+                .mapToObj(i -> {
+                    Product product = new Product("product-" + i);
+                    product.setPrice(1.0 + i);
+                    return product;
+                })
+                .toList();
+        productDao.saveAll(products);
+        long id0 = products.get(0).getId();
+        long id3 = products.get(3).getId();
+        //nothing in the second-level cache - the products must be read from the database
+        emf.getCache().evictAll();
+
+        long statements = statementCount();
+        Map<Long, Product> productsById = productDao.getAllById(List.of(id3, id0, id3, -1L));
+        //one SELECT for the distinct ids, in the order they were passed, without the missing one
+        assertEquals(1, statementCount() - statements);
+        assertEquals(List.of(id3, id0), List.copyOf(productsById.keySet()));
+        assertEquals("product-3", productsById.get(id3).getName());
+        assertEquals(1.0, productsById.get(id0).getPrice());
+
+        //second-level cache hits
+        statements = statementCount();
+        assertEquals(2, productDao.getAllById(List.of(id0, id3)).size());
+        assertEquals(0, statementCount() - statements);
+
+        assertTrue(productDao.getAllById(List.of()).isEmpty());
+    }
+
+    @Test
+    public void testCloseStopsTheLeakDetectorOfTheDao() throws InterruptedException {
+        emf.close();
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of(EntityManagerLifecycle.LEAK_DETECTION_THRESHOLD, "60000"));
+        ProductDao ownLifecycle = new ProductDao(emf);
+        assertEquals(1, leakDetectorThreads());
+
+        ownLifecycle.close();
+
+        for (int i = 0; i < 50 && leakDetectorThreads() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, leakDetectorThreads());
+    }
+
+    @Test
+    public void testGetAllByIdInBatches() {
+        emf.close();
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of(ProductDao.MULTI_LOAD_BATCH_SIZE, "4"));
+        productDao = new ProductDao(emf);
+        List<Product> products = IntStream.range(0, 10)
+                .mapToObj(i -> new Product("product-" + i))
+                .toList();
+        productDao.saveAll(products);
+        emf.getCache().evictAll();
+
+        long statements = statementCount();
+        Map<Long, Product> productsById = productDao.getAllById(products.stream().map(Product::getId).toList());
+        //4 + 4 + 2 ids
+        assertEquals(3, statementCount() - statements);
+        assertEquals(10, productsById.size());
+    }
+
+    private static long statementCount() {
+        return DataAccessMetrics.global().snapshot().statementNanos().count();
+    }
+
+    @Test
+    public void testSaveAllClosesTheStream() {
+        AtomicBoolean closed = new AtomicBoolean();
+        productDao.saveAll(Stream.of(new Product("Biscuit"), new Product("Shoes")).onClose(() -> closed.set(true)));
+
+        assertTrue(closed.get());
+        assertEquals(2, productDao.getAll().size());
+    }
+
+    @Test
+    public void testGetDto() {
+        //save the object
+        Product product = new Product();
+        product.setName("Biscuit");
+        product.setPrice(8.37);
+        productDao.save(product);
+
+        //get the projection
+        assertEquals(new ProductDto("Biscuit", 8.37), productDao.getDto(product.getId()).orElse(null));
+        assertTrue(productDao.getDto(-1).isEmpty());
+        assertEquals(List.of(new ProductDto("Biscuit", 8.37)), productDao.getAllAsDto());
+    }
+
+    @Test
+    public void testGetPage() {
+        //save 25 products
+        productDao.saveAll(IntStream.range(0, 25)
+                .mapToObj(i -> new Product("Product " + i))
+                .toList());
+
+        //walk the table 10 products at a time using the id of the last product as the key
+        Page<Product> page1 = productDao.getPage(null, 10);
+        Page<Product> page2 = productDao.getPage(page1.nextAfterId(), 10);
+        Page<Product> page3 = productDao.getPage(page2.nextAfterId(), 10);
+
+        assertEquals(10, page1.content().size());
+        assertTrue(page1.hasNext());
+        assertEquals("Product 10", page2.content().get(0).getName());
+        assertEquals(5, page3.content().size());
+        assertFalse(page3.hasNext());
+
+        //same pages with OFFSET/LIMIT
+        assertEquals(page2.content(), productDao.getPageByOffset(1, 10).content());
+        assertEquals(page3.content(), productDao.getPageByOffset(2, 10).content());
+        assertFalse(productDao.getPageByOffset(2, 10).hasNext());
+    }
+
+    @Test
+    public void testInvalidPageArgumentsAreRejected() {
+        for (Runnable invalidPage : List.<Runnable>of(
+                () -> productDao.getPage(null, 0),
+                () -> productDao.getPage(null, Integer.MAX_VALUE),
+                () -> productDao.getPageByOffset(0, -1),
+                () -> productDao.getPageByOffset(-1, 10))) {
+            try {
+                invalidPage.run();
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testOffsetOverflowIsRejected() {
+        productDao.getPageByOffset(Integer.MAX_VALUE, 10);
+    }
+
     @Test
     public void testSave() {
         //create product
@@ -101,6 +246,23 @@ public class ProductDaoTest extends TestCase {
         assertNotNull(product.getId());
     }
 
+    @Test
+    public void testSaveAll() {
+        //create more products than hibernate.jdbc.batch_size so the context is flushed and cleared in between
+        List<Product> products = IntStream.range(0, 120)
+                .mapToObj(i -> {
+                    Product product = new Product("Product " + i);
+                    product.setPrice(i + 0.5);
+                    return product;
+                })
+                .toList();
+        //save products
+        productDao.saveAll(products);
+
+        products.forEach(product -> assertNotNull(product.getId()));
+        assertEquals(120, productDao.getAll().size());
+    }
+
     @Test
     public void testUpdateWithMergeDetached() {
         //create product
@@ -146,6 +308,62 @@ public class ProductDaoTest extends TestCase {
         assertEquals(updatedProduct.getPrice(), 10.0);
     }
 
+    @Test
+    public void testStaleUpdateIsRejected() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productDao.save(product);
+        Product updatedProduct = productDao.updateWithGetPersistent(product, new ProductDto("Burger", 10.0));
+        assertEquals(product.getVersion() + 1, (long) updatedProduct.getVersion());
+
+        //'product' still has the version it was saved with - both updates would overwrite "Burger"
+        try {
+            productDao.updateWithGetPersistent(product, new ProductDto("Pizza", 12.0));
+            fail("OptimisticLockException expected");
+        } catch (OptimisticLockException expected) {
+        }
+        try {
+            productDao.updateWithMergeDetached(product, new ProductDto("Pizza", 12.0));
+            fail("OptimisticLockException expected");
+        } catch (OptimisticLockException expected) {
+        } catch (RollbackException expected) {
+            assertTrue(expected.getCause() instanceof OptimisticLockException);
+        }
+
+        assertEquals("Burger", productDao.get(product.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void testUpdateWithoutVersionIsNotAnInsert() {
+        Product product = new Product("Sandwich");
+        productDao.save(product);
+
+        //only the id is known
+        Product detachedProduct = new Product();
+        detachedProduct.setId(product.getId());
+        productDao.updateWithMergeDetached(detachedProduct, new ProductDto("Burger", 10.0));
+
+        assertEquals(1, productDao.getAll().size());
+        assertEquals("Burger", productDao.get(product.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void testBulkUpdateIncrementsVersion() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productDao.save(product);
+
+        productDao.applyPriceMultiplier((root, cb) -> cb.equal(root.get("id"), product.getId()), 2);
+
+        //read before the bulk update - must not overwrite its price
+        try {
+            productDao.updateWithGetPersistent(product, new ProductDto("Burger", 5.37));
+            fail("OptimisticLockException expected");
+        } catch (OptimisticLockException expected) {
+        }
+        assertEquals(product.getVersion() + 1, (long) productDao.get(product.getId()).orElseThrow().getVersion());
+    }
+
     @Test
     public void testDelete() {
         //create product
@@ -164,6 +382,55 @@ public class ProductDaoTest extends TestCase {
         assertNull(deletedProduct);
     }
 
+    @Test
+    public void testUpdatePriceWhere() {
+        //save products
+        productDao.saveAll(IntStream.range(0, 10)
+                .mapToObj(i -> {
+                    Product product = new Product("Product " + i);
+                    product.setPrice((double) i);
+                    return product;
+                })
+                .toList());
+        //puts the product in the second-level cache
+        Product product = productDao.get(productDao.getAll().get(0).getId()).orElseThrow();
+
+        int updated = productDao.updatePriceWhere((root, cb) -> cb.lessThan(root.get("price"), 5.0), 100.0);
+
+        assertEquals(5, updated);
+        //not served from a stale cache entry
+        assertEquals(100.0, productDao.get(product.getId()).orElseThrow().getPrice());
+    }
+
+    @Test
+    public void testApplyPriceMultiplier() {
+        //save products
+        Product product1 = new Product("Biscuit");
+        product1.setPrice(10.0);
+        Product product2 = new Product("Shoes");
+        product2.setPrice(50.0);
+        productDao.saveAll(List.of(product1, product2));
+
+        int updated = productDao.applyPriceMultiplier((root, cb) -> cb.equal(root.get("name"), "Shoes"), 1.1);
+
+        assertEquals(1, updated);
+        assertEquals(10.0, productDao.get(product1.getId()).orElseThrow().getPrice());
+        assertEquals(55.0, productDao.get(product2.getId()).orElseThrow().getPrice(), 0.0001);
+    }
+
+    @Test
+    public void testDeleteWhere() {
+        //save products
+        productDao.saveAll(IntStream.range(0, 10)
+                .mapToObj(i -> new Product(i % 2 == 0 ? "Milk" : "Bread"))
+                .toList());
+
+        int deleted = productDao.deleteWhere((root, cb) -> cb.equal(root.get("name"), "Milk"));
+
+        assertEquals(5, deleted);
+        assertEquals(5, productDao.getAll().size());
+    }
+
     @Test
 //    @Transactional(value = Transactional.TxType.REQUIRES_NEW)
     public void testDeleteEMPerClass() {
@@ -182,4 +449,10 @@ public class ProductDaoTest extends TestCase {
         Product deletedProduct =productDao.get(product.getId()).orElse(null);
         assertNull(deletedProduct);
     }
-}
\ No newline at end of file
+
+    private static long leakDetectorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("entity-manager-leak-detector"))
+                .count();
+    }
+}
@@ -0,0 +1,139 @@
+package org.jhd.dao.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.dao.Dao;
+import org.jhd.dao.StatelessDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class StatelessProductDaoTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private StatelessDao<Product> statelessDao;
+    private Dao<Product, ProductDto> productDao;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("hibernate.show_sql", "false"));
+        statelessDao = new StatelessProductDao(emf);
+        productDao = new ProductDao(emf);
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testInsertAndGet() {
+        Product product = product("Biscuit", 8.37);
+        statelessDao.insert(product);
+
+        assertNotNull(product.getId());
+        Product productFromDb = statelessDao.get(product.getId()).orElse(null);
+        assertNotNull(productFromDb);
+        assertEquals("Biscuit", productFromDb.getName());
+        assertEquals(8.37, productFromDb.getPrice());
+    }
+
+    @Test
+    public void testInsertAll() {
+        List<Product> products = IntStream.range(0, 120)
+                .mapToObj(i -> product("product-" + i, i))
+                .toList();
+        statelessDao.insertAll(products);
+
+        assertTrue(products.stream().allMatch(product -> product.getId() != null));
+        assertEquals(120, productDao.getAll().size());
+    }
+
+    @Test
+    public void testUpdateWritesEveryColumn() {
+        Product product = product("Biscuit", 8.37);
+        statelessDao.insert(product);
+
+        Product update = new Product();
+        update.setId(product.getId());
+        update.setVersion(product.getVersion());
+        update.setName("Cookie");
+        statelessDao.update(update);
+
+        Product productFromDb = statelessDao.get(product.getId()).orElseThrow();
+        assertEquals("Cookie", productFromDb.getName());
+        //no snapshot to compare with - the null price is written too
+        assertNull(productFromDb.getPrice());
+    }
+
+    @Test
+    public void testUpdatePrice() {
+        Product product = product("Biscuit", 8.37);
+        statelessDao.insert(product);
+
+        assertEquals(1, statelessDao.updatePrice(product.getId(), 9.99));
+        assertEquals(0, statelessDao.updatePrice(product.getId() + 1000, 9.99));
+
+        Product productFromDb = statelessDao.get(product.getId()).orElseThrow();
+        assertEquals("Biscuit", productFromDb.getName());
+        assertEquals(9.99, productFromDb.getPrice());
+    }
+
+    @Test
+    public void testDelete() {
+        Product product1 = product("Biscuit", 8.37);
+        Product product2 = product("Shoes", 49.99);
+        statelessDao.insertAll(List.of(product1, product2));
+
+        statelessDao.delete(product1);
+        assertEquals(1, statelessDao.deleteById(product2.getId()));
+        assertEquals(0, statelessDao.deleteById(product2.getId()));
+
+        assertTrue(statelessDao.get(product1.getId()).isEmpty());
+        assertTrue(statelessDao.get(product2.getId()).isEmpty());
+    }
+
+    //ProductDao reads through the second-level cache and caches getPage() - none of it may be stale after a
+    //stateless write
+    @Test
+    public void testStatefulReadsSeeStatelessWrites() {
+        Product product = product("Biscuit", 8.37);
+        productDao.save(product);
+        assertEquals(8.37, productDao.get(product.getId()).orElseThrow().getPrice());
+        assertEquals(1, productDao.getPage(null, 10).content().size());
+
+        statelessDao.updatePrice(product.getId(), 9.99);
+        assertEquals(9.99, productDao.get(product.getId()).orElseThrow().getPrice());
+
+        //updatePrice incremented the version
+        product = productDao.get(product.getId()).orElseThrow();
+        product.setPrice(10.99);
+        statelessDao.update(product);
+        assertEquals(10.99, productDao.get(product.getId()).orElseThrow().getPrice());
+
+        statelessDao.insert(product("Shoes", 49.99));
+        assertEquals(2, productDao.getPage(null, 10).content().size());
+
+        statelessDao.delete(product);
+        assertTrue(productDao.get(product.getId()).isEmpty());
+        assertEquals(1, productDao.getPage(null, 10).content().size());
+    }
+
+    private static Product product(String name, double price) {
+        Product product = new Product(name);
+        product.setPrice(price);
+        return product;
+    }
+}
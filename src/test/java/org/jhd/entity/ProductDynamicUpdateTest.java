@@ -0,0 +1,72 @@
+package org.jhd.entity;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(JUnit4.class)
+public class ProductDynamicUpdateTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+    private Dao<Product, ProductDto> productDao;
+
+    @Before
+    public void init() {
+        //record the SQL sent to the database
+        StatementInspector statementInspector = sql -> {
+            statements.add(sql);
+            return sql;
+        };
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("hibernate.session_factory.statement_inspector", statementInspector));
+        productDao = new ProductDao(emf);
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testOnlyChangedColumnIsUpdated() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productDao.save(product);
+        statements.clear();
+
+        //same name, new price
+        productDao.updateWithGetPersistent(product, new ProductDto("Sandwich", 6.0));
+
+        List<String> updates = statements.stream().filter(sql -> sql.startsWith("update")).toList();
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0).contains("product_price"));
+        assertFalse(updates.get(0).contains("product_name"));
+    }
+
+    @Test
+    public void testNothingIsUpdatedWhenNothingChanged() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productDao.save(product);
+        statements.clear();
+
+        productDao.updateWithGetPersistent(product, new ProductDto("Sandwich", 5.37));
+
+        assertTrue(statements.stream().noneMatch(sql -> sql.startsWith("update")));
+    }
+}
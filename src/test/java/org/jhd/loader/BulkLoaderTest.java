@@ -0,0 +1,227 @@
+package org.jhd.loader;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.entity.Product;
+import org.jhd.exception.BulkLoadException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class BulkLoaderTest extends TestCase {
+    private static final Function<Map<String, String>, Product> PRODUCT = fields -> {
+        Product product = new Product(fields.get("name"));
+        product.setPrice(Double.valueOf(fields.get("price")));
+        return product;
+    };
+
+    private static EntityManagerFactory emf;
+    private Path directory;
+
+    @Before
+    public void init() throws IOException {
+        //pooled ids so the inserts are batched
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test", Map.of(
+                "hibernate.orm_xml_files", List.of("META-INF/orm-pooled-ids.xml"),
+                "hibernate.show_sql", "false"));
+        directory = Files.createTempDirectory("bulk-loader-test");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        if(emf != null) {
+            emf.close();
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testLoadsCsvInPartitions() throws IOException {
+        Path input = csv(10_000);
+        BulkLoader<Product> loader = new BulkLoader<>(emf, PRODUCT,
+                new BulkLoadSettings(4, 1000, 50, 2, directory.resolve("products.checkpoint")));
+
+        LoadResult result = loader.load(input);
+
+        assertEquals(10_000, result.loaded());
+        assertEquals(10, result.partitions());
+        assertEquals(0, result.skippedPartitions());
+        assertEquals(10_000, countProducts());
+        assertEquals(49_995_000.0, sumOfPrices());
+    }
+
+    @Test
+    public void testLoadsJsonLines() throws IOException {
+        Path input = Files.writeString(directory.resolve("products.jsonl"), """
+                {"name": "Biscuit", "price": 8.37}
+
+                {"price": 1.5e1, "name": "Caf\\u00e9 \\"Noir\\", 1kg"}
+                """);
+        BulkLoader<Product> loader = new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(2, 1, 50, 1, null));
+
+        assertEquals(2, loader.load(input).loaded());
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            assertEquals(List.of("Biscuit", "Café \"Noir\", 1kg"), em.createQuery(
+                    "SELECT p.name FROM Product p ORDER BY p.price", String.class).getResultList());
+        }
+    }
+
+    @Test
+    public void testContentAfterTheJsonObjectIsRejected() throws IOException {
+        Path input = Files.writeString(directory.resolve("products.jsonl"), """
+                {"name": "Biscuit", "price": 8.37}\t
+                {"name": "Shoes", "price": 49.99} garbage
+                """);
+        BulkLoader<Product> loader = new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(1, 10, 50, 1, null));
+
+        try {
+            loader.load(input);
+            fail("BulkLoadException expected");
+        } catch (BulkLoadException expected) {
+            assertEquals("Line 2, column 35: unexpected content after the object",
+                    expected.getCause().getMessage());
+        }
+        assertEquals(0, countProducts());
+    }
+
+    @Test(timeout = 30_000)
+    public void testWorkerDeadOnAnErrorDoesNotHangTheLoad() throws IOException {
+        AtomicBoolean workerDown = new AtomicBoolean();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:~/test");
+        config.setUsername("sa");
+        config.setPassword("");
+        try (HikariDataSource dataSource = new HikariDataSource(config) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (workerDown.get()) {
+                    throw new AssertionError("worker down");
+                }
+                return super.getConnection();
+            }
+
+            //the user of the unit is the one of the pool
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return getConnection();
+            }
+        }) {
+            emf.close();
+            emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test", Map.of(
+                    "hibernate.orm_xml_files", List.of("META-INF/orm-pooled-ids.xml"),
+                    "hibernate.show_sql", "false",
+                    "jakarta.persistence.nonJtaDataSource", dataSource));
+            workerDown.set(true);
+            Path input = csv(100);
+            //one worker, and a queue the reader fills before the worker fails
+            BulkLoader<Product> loader = new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(1, 1, 50, 1, null));
+
+            try {
+                loader.load(input);
+                fail("BulkLoadException expected");
+            } catch (BulkLoadException expected) {
+                assertEquals("worker down", expected.getCause().getMessage());
+            }
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testQuotedCsvValues() throws IOException {
+        Path input = Files.writeString(directory.resolve("products.csv"), """
+                name,price
+                "Shoes, size 42",49.99
+                "12"" pizza",9
+                """);
+        new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(1, 10, 50, 1, null)).load(input);
+
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            assertEquals(List.of("12\" pizza", "Shoes, size 42"), em.createQuery(
+                    "SELECT p.name FROM Product p ORDER BY p.price", String.class).getResultList());
+        }
+    }
+
+    //the failed partition and the ones after it are loaded on the second run, the committed ones are not
+    //loaded twice
+    @Test
+    public void testResumesFromCheckpoint() throws IOException {
+        Path input = csv(5000);
+        Path checkpoint = directory.resolve("products.checkpoint");
+        BulkLoadSettings settings = new BulkLoadSettings(1, 1000, 50, 1, checkpoint);
+        Function<Map<String, String>, Product> failing = fields -> {
+            if (fields.get("name").equals("product-3500")) {
+                throw new IllegalArgumentException("bad record");
+            }
+            return PRODUCT.apply(fields);
+        };
+
+        try {
+            new BulkLoader<>(emf, failing, settings).load(input);
+            fail();
+        } catch (BulkLoadException expected) {
+            assertEquals("bad record", expected.getCause().getMessage());
+        }
+        assertEquals(3000, countProducts());
+
+        LoadResult result = new BulkLoader<>(emf, PRODUCT, settings).load(input);
+        assertEquals(3, result.skippedPartitions());
+        assertEquals(2000, result.loaded());
+        assertEquals(5000, countProducts());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointOfAnotherPartitionSize() throws IOException {
+        Path input = csv(10);
+        Path checkpoint = directory.resolve("products.checkpoint");
+        new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(1, 5, 50, 1, checkpoint)).load(input);
+
+        new BulkLoader<>(emf, PRODUCT, new BulkLoadSettings(1, 2, 50, 1, checkpoint)).load(input);
+    }
+
+    private Path csv(int rowCount) throws IOException {
+        String rows = IntStream.range(0, rowCount)
+                .mapToObj(i -> "product-" + i + "," + i)
+                .collect(Collectors.joining("\n", "name,price\n", "\n"));
+        return Files.writeString(directory.resolve("products.csv"), rows);
+    }
+
+    private long countProducts() {
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            return em.createQuery("SELECT COUNT(p) FROM Product p", Long.class).getSingleResult();
+        }
+    }
+
+    private double sumOfPrices() {
+        EntityManager em = emf.createEntityManager();
+        try (em) {
+            return em.createQuery("SELECT SUM(p.price) FROM Product p", Double.class).getSingleResult();
+        }
+    }
+}
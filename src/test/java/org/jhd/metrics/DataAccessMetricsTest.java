@@ -0,0 +1,141 @@
+package org.jhd.metrics;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.dao.Dao;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.persistence.EntityManagerLifecycle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class DataAccessMetricsTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private final DataAccessMetrics metrics = DataAccessMetrics.global();
+    private EntityManagerLifecycle lifecycle;
+    private Dao<Product, ProductDto> productDao;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test");
+        lifecycle = new EntityManagerLifecycle(emf);
+        productDao = new ProductDao(lifecycle);
+        metrics.reset();
+    }
+
+    @After
+    public void teardown() {
+        //back to the thresholds of the persistence unit
+        metrics.configure(emf.getProperties());
+        lifecycle.close();
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testOperationsAreTimed() {
+        Product product = new Product("Biscuit");
+        productDao.save(product);
+        productDao.get(product.getId());
+        productDao.get(product.getId());
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.operation("ProductDao.save").count());
+        assertEquals(2, snapshot.operation("ProductDao.get").count());
+        assertTrue(snapshot.operation("ProductDao.get").max() > 0);
+        assertTrue(snapshot.connectionAcquisitionNanos().count() > 0);
+    }
+
+    @Test
+    public void testTransactionsAndRollbacksAreCounted() {
+        productDao.saveAll(List.of(new Product("Biscuit"), new Product("Shoes")));
+        try {
+            lifecycle.executeInTransaction(em -> {
+                em.persist(new Product("Kettle"));
+                em.flush();
+                throw new IllegalStateException("rollback");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.transactions());
+        assertEquals(1, snapshot.rollbacks());
+        //one insert per product with IDENTITY ids
+        assertEquals(2, snapshot.statementsPerTransaction().max());
+        assertEquals(3, snapshot.entitiesFlushed());
+    }
+
+    @Test
+    public void testNPlusOneIsReported() {
+        metrics.setNPlusOneThreshold(3);
+        List<Product> products = IntStream.range(0, 5).mapToObj(i -> new Product("Product " + i)).toList();
+        productDao.saveAll(products);
+
+        //one query per id instead of one query for all of them
+        lifecycle.executeReadOnly(em -> products.stream()
+                .map(product -> em.createQuery("SELECT p FROM Product p WHERE p.id = :id", Product.class)
+                        .setParameter("id", product.getId())
+                        .getSingleResult())
+                .toList());
+
+        assertEquals(1, metrics.snapshot().nPlusOneWarnings());
+    }
+
+    @Test
+    public void testStatementsWithoutSqlAreNotCounted() {
+        metrics.setNPlusOneThreshold(3);
+        productDao.getAll();
+        assertNull(SqlStatementInspector.currentStatement());
+
+        //executions the inspector did not see - not the SELECT of the previous statement of the thread
+        new SqlStatementInspector().inspect("select p1_0.id from product p1_0");
+        MetricsSessionEventListener listener = new MetricsSessionEventListener();
+        for (int i = 0; i < 5; i++) {
+            listener.jdbcExecuteStatementStart();
+            listener.jdbcExecuteStatementEnd();
+        }
+        listener.transactionCompletion(true);
+
+        assertEquals(0, metrics.snapshot().nPlusOneWarnings());
+    }
+
+    @Test
+    public void testSlowQueriesAreReported() {
+        metrics.setSlowQueryThreshold(Duration.ZERO);
+        productDao.getAll();
+
+        assertEquals(1, metrics.snapshot().slowQueries());
+    }
+
+    @Test
+    public void testAnotherUnitDoesNotChangeTheThresholds() {
+        metrics.setNPlusOneThreshold(3);
+        //the test unit sets jhd.metrics.n-plus-one-threshold=10
+        new EntityManagerLifecycle(emf).close();
+
+        assertEquals(3, metrics.getNPlusOneThreshold());
+    }
+
+    @Test
+    public void testEntityStatistics() {
+        productDao.saveAll(List.of(new Product("Biscuit"), new Product("Shoes")));
+        productDao.getAll();
+
+        EntityStatistics statistics = DataAccessMetrics.entityStatistics(emf);
+        assertEquals(2, statistics.inserted());
+        assertEquals(2, statistics.loaded());
+    }
+}
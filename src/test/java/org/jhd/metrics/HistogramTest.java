@@ -0,0 +1,45 @@
+package org.jhd.metrics;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HistogramTest extends TestCase {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.upperBoundOf(bucket) >= value);
+            //12.5% precision
+            assertTrue(Histogram.upperBoundOf(bucket) - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(1_000_000, snapshot.max());
+        assertEquals(500_500.0, snapshot.mean());
+        assertEquals(500_000, snapshot.p50(), 500_000 / 8);
+        assertEquals(990_000, snapshot.p99(), 990_000 / 8);
+        assertTrue(snapshot.p99() <= snapshot.max());
+    }
+
+    @Test
+    public void testReset() {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(new HistogramSnapshot(0, 0, 0, 0, 0, 0), histogram.snapshot());
+    }
+}
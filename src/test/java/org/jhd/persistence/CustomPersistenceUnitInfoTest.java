@@ -0,0 +1,103 @@
+package org.jhd.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import junit.framework.TestCase;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.entity.Product;
+import org.jhd.metrics.PoolStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class CustomPersistenceUnitInfoTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private CustomPersistenceUnitInfo persistenceUnitInfo;
+
+    @Before
+    public void init() {
+        persistenceUnitInfo = new CustomPersistenceUnitInfo("pool-test",
+                PoolSettings.forUrl("jdbc:h2:mem:pool-test;DB_CLOSE_DELAY=-1", "sa", "").withPoolSize(4, 2));
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo, Map.of(
+                "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                "jakarta.persistence.schema-generation.database.action", "drop-and-create"));
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null && emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testOnePoolPerPersistenceUnit() {
+        DataSource dataSource = persistenceUnitInfo.getNonJtaDataSource();
+        assertSame(dataSource, persistenceUnitInfo.getNonJtaDataSource());
+        assertNull(persistenceUnitInfo.getJtaDataSource());
+        assertEquals(4, ((HikariDataSource) dataSource).getMaximumPoolSize());
+        assertEquals(2, ((HikariDataSource) dataSource).getMinimumIdle());
+    }
+
+    @Test
+    public void testPoolStatistics() throws SQLException {
+        new ProductDao(emf).save(new Product("Biscuit"));
+
+        try (Connection connection = persistenceUnitInfo.getNonJtaDataSource().getConnection()) {
+            PoolStatistics statistics = persistenceUnitInfo.getPoolStatistics();
+            assertEquals(1, statistics.activeConnections());
+            assertTrue(statistics.totalConnections() <= 4);
+            assertTrue(statistics.connectionWaitNanos().count() > 0);
+            assertEquals(0, statistics.connectionTimeouts());
+        }
+        assertEquals(0, persistenceUnitInfo.getPoolStatistics().activeConnections());
+    }
+
+    @Test
+    public void testClosingTheEntityManagerFactoryClosesThePool() {
+        HikariDataSource dataSource = (HikariDataSource) persistenceUnitInfo.getNonJtaDataSource();
+        emf.close();
+
+        assertTrue(dataSource.isClosed());
+    }
+
+    @Test
+    public void testFastBootstrap() {
+        //the schema of init()
+        CustomPersistenceUnitInfo lazyUnit = new CustomPersistenceUnitInfo("pool-test-lazy",
+                PoolSettings.forUrl("jdbc:h2:mem:pool-test;DB_CLOSE_DELAY=-1", "sa", "").withPoolSize(4, 1)
+                        .withLazyStart(true));
+        EntityManagerFactory lazyEmf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(lazyUnit,
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                        "hibernate.temp.use_jdbc_metadata_defaults", "false",
+                        "jakarta.persistence.database-product-name", "H2",
+                        "jakarta.persistence.database-product-version", "2.2.224",
+                        "hibernate.jdbc.use_get_generated_keys", "true",
+                        "jakarta.persistence.schema-generation.database.action", "none"));
+        try {
+            HikariDataSource dataSource = (HikariDataSource) lazyUnit.getNonJtaDataSource();
+            assertNull(dataSource.getHikariPoolMXBean());
+            SessionFactoryImplementor sessionFactory = lazyEmf.unwrap(SessionFactoryImplementor.class);
+            assertEquals(2, sessionFactory.getJdbcServices().getDialect().getVersion().getMajor());
+            assertTrue(sessionFactory.getSessionFactoryOptions().isGetGeneratedKeysEnabled());
+
+            Product product = new Product("Biscuit");
+            new ProductDao(lazyEmf).save(product);
+
+            assertNotNull(product.getId());
+            assertNotNull(dataSource.getHikariPoolMXBean());
+        } finally {
+            lazyEmf.close();
+        }
+    }
+}
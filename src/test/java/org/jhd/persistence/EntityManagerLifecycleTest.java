@@ -0,0 +1,197 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.hibernate.Session;
+import org.jhd.entity.Product;
+import org.jhd.persistence.EntityManagerLifecycle.ScopedEntityManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class EntityManagerLifecycleTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private EntityManagerLifecycle lifecycle;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test");
+        lifecycle = new EntityManagerLifecycle(emf, Duration.ofMillis(100));
+    }
+
+    @After
+    public void teardown() {
+        lifecycle.close();
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testEntityManagersAreClosed() {
+        lifecycle.executeInTransaction(em -> {
+            em.persist(new Product("Biscuit"));
+            return null;
+        });
+        lifecycle.execute(em -> em.createQuery("SELECT p FROM Product p", Product.class).getResultList());
+
+        EntityManagerLifecycle.Counters counters = lifecycle.getCounters();
+        assertEquals(2, counters.opened());
+        assertEquals(2, counters.closed());
+        assertEquals(0, counters.open());
+        assertEquals(0, counters.leaked());
+    }
+
+    @Test
+    public void testEntityManagerIsClosedOnRollback() {
+        try {
+            lifecycle.executeInTransaction(em -> {
+                em.persist(new Product("Biscuit"));
+                throw new IllegalStateException("boom");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+
+        assertEquals(0, lifecycle.getCounters().open());
+        assertTrue(lifecycle.execute(em -> em.createQuery("SELECT p FROM Product p", Product.class)
+                .getResultList()).isEmpty());
+    }
+
+    @Test
+    public void testReadOnlyDoesNotWriteChanges() {
+        Product product = new Product("Biscuit");
+        product.setPrice(8.37);
+        lifecycle.executeInTransaction(em -> {
+            em.persist(product);
+            return null;
+        });
+
+        //the loaded entity is read-only and the context is never flushed
+        lifecycle.executeReadOnly(em -> {
+            Product readOnlyProduct = em.find(Product.class, product.getId());
+            assertTrue(em.unwrap(Session.class).isReadOnly(readOnlyProduct));
+            readOnlyProduct.setName("Cake");
+            return null;
+        });
+
+        Product productFromDb = lifecycle.execute(em -> em.find(Product.class, product.getId()));
+        assertEquals("Biscuit", productFromDb.getName());
+        assertEquals(0, lifecycle.getCounters().open());
+    }
+
+    @Test
+    public void testFailedReadOnlyResetDoesNotHideTheException() {
+        try {
+            lifecycle.executeReadOnly(em -> {
+                //a broken connection - resetting its read-only flag and the rollback fail
+                em.unwrap(Session.class).doWork(Connection::close);
+                throw new IllegalStateException("boom");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+            assertEquals(2, e.getSuppressed().length);
+        }
+
+        assertEquals(0, lifecycle.getCounters().open());
+    }
+
+    @Test
+    public void testConflictIsRetried() {
+        Product product = new Product("Biscuit");
+        product.setPrice(1.0);
+        lifecycle.executeInTransaction(em -> {
+            em.persist(product);
+            return null;
+        });
+        AtomicInteger attempts = new AtomicInteger();
+
+        double price = lifecycle.executeInTransactionWithRetry(new RetryPolicy(3, Duration.ZERO, Duration.ZERO, 1),
+                em -> {
+                    Product persistentProduct = em.find(Product.class, product.getId());
+                    if (attempts.incrementAndGet() == 1) {
+                        //another transaction adds 10 between our read and our write
+                        addToPrice(product.getId(), 10.0);
+                    }
+                    persistentProduct.setPrice(persistentProduct.getPrice() + 1);
+                    return persistentProduct.getPrice();
+                });
+
+        assertEquals(2, attempts.get());
+        //both increments are there
+        assertEquals(12.0, price);
+        assertEquals(12.0, lifecycle.execute(em -> em.find(Product.class, product.getId())).getPrice());
+        assertEquals(0, lifecycle.getCounters().open());
+    }
+
+    @Test
+    public void testConflictOfTheLastAttemptIsThrown() {
+        Product product = new Product("Biscuit");
+        product.setPrice(1.0);
+        lifecycle.executeInTransaction(em -> {
+            em.persist(product);
+            return null;
+        });
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            lifecycle.executeInTransactionWithRetry(new RetryPolicy(3, Duration.ZERO, Duration.ZERO, 1), em -> {
+                attempts.incrementAndGet();
+                Product persistentProduct = em.find(Product.class, product.getId());
+                addToPrice(product.getId(), 10.0);
+                persistentProduct.setPrice(0.0);
+                return null;
+            });
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            assertTrue(RetryPolicy.isOptimisticLockFailure(e));
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testOtherExceptionsAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            lifecycle.executeInTransactionWithRetry(RetryPolicy.defaults(), em -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("boom");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    private void addToPrice(long id, double amount) {
+        lifecycle.executeInTransaction(em -> {
+            Product product = em.find(Product.class, id);
+            product.setPrice(product.getPrice() + amount);
+            return null;
+        });
+    }
+
+    @Test
+    public void testLeakIsDetected() throws InterruptedException {
+        ScopedEntityManager scoped = lifecycle.open();
+        //the detector runs every threshold, so give it two periods
+        Thread.sleep(300);
+        assertEquals(1, lifecycle.getCounters().leaked());
+        assertEquals(1, lifecycle.getCounters().open());
+
+        scoped.close();
+        assertEquals(0, lifecycle.getCounters().open());
+        assertFalse(scoped.get().isOpen());
+    }
+}
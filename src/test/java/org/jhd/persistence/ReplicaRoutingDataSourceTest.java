@@ -0,0 +1,173 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManagerFactory;
+import junit.framework.TestCase;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.entity.Product;
+import org.jhd.persistence.ReplicaSettings.LoadBalancing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+//two in memory H2 databases stand in for a primary and its replicas - nothing is replicated, so a row can only be
+//read where it was written
+@RunWith(JUnit4.class)
+public class ReplicaRoutingDataSourceTest extends TestCase {
+    private static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    private static final List<String> REPLICA_URLS = List.of(
+            "jdbc:h2:mem:routing-replica-0;DB_CLOSE_DELAY=-1",
+            "jdbc:h2:mem:routing-replica-1;DB_CLOSE_DELAY=-1");
+    private static final Map<String, Object> H2_SCHEMA = Map.of(
+            "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+            "jakarta.persistence.schema-generation.database.action", "drop-and-create");
+
+    private static EntityManagerFactory emf;
+    //write straight to each replica
+    private final List<EntityManagerFactory> replicaEmfs = new ArrayList<>();
+    private final List<ProductDao> replicaDaos = new ArrayList<>();
+
+    @Before
+    public void init() {
+        for (String url : REPLICA_URLS) {
+            EntityManagerFactory replicaEmf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                    new CustomPersistenceUnitInfo("replica-schema", PoolSettings.forUrl(url, "sa", "")), H2_SCHEMA);
+            replicaEmfs.add(replicaEmf);
+            replicaDaos.add(new ProductDao(replicaEmf));
+        }
+    }
+
+    @After
+    public void teardown() {
+        replicaEmfs.forEach(EntityManagerFactory::close);
+        if(emf != null && emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoToTheReplicas() {
+        CustomPersistenceUnitInfo persistenceUnitInfo = persistenceUnitInfo(ReplicaSettings.defaults());
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo, H2_SCHEMA);
+        ProductDao productDao = new ProductDao(emf);
+        productDao.save(new Product("Biscuit"));
+        replicaDaos.get(0).save(new Product("Replica 0"));
+        replicaDaos.get(1).save(new Product("Replica 1"));
+
+        //round robin
+        assertEquals(List.of("Replica 0"), names(productDao.getAll()));
+        assertEquals(List.of("Replica 1"), names(productDao.getAll()));
+        try (var products = productDao.stream()) {
+            assertEquals(List.of("Replica 0"), names(products.toList()));
+        }
+        //a read-write transaction
+        assertEquals(List.of("Biscuit"), new EntityManagerLifecycle(emf).executeInTransaction(em ->
+                names(em.createQuery("SELECT p FROM Product p", Product.class).getResultList())));
+
+        ReplicaRoutingDataSource.Statistics statistics = routingDataSource(persistenceUnitInfo).getStatistics();
+        assertEquals(List.of(2L, 1L), statistics.replicaConnections());
+        assertEquals(0, statistics.stickyReads());
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        CustomPersistenceUnitInfo persistenceUnitInfo = persistenceUnitInfo(
+                new ReplicaSettings(LoadBalancing.ROUND_ROBIN, Duration.ofMinutes(1)));
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo, H2_SCHEMA);
+        ProductDao productDao = new ProductDao(emf);
+        productDao.save(new Product("Biscuit"));
+
+        //the thread that wrote reads from the primary, another one from a replica
+        assertEquals(List.of("Biscuit"), names(productDao.getAll()));
+        assertEquals(List.of(), names(CompletableFuture.supplyAsync(productDao::getAll).join()));
+
+        ReplicaRoutingDataSource.Statistics statistics = routingDataSource(persistenceUnitInfo).getStatistics();
+        assertEquals(1, statistics.stickyReads());
+        assertEquals(1, statistics.replicaConnections().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testLeastConnections() throws SQLException {
+        CustomPersistenceUnitInfo persistenceUnitInfo = persistenceUnitInfo(
+                new ReplicaSettings(LoadBalancing.LEAST_CONNECTIONS, Duration.ZERO));
+        ReplicaRoutingDataSource dataSource = routingDataSource(persistenceUnitInfo);
+        try (Connection busy = readOnlyConnection(dataSource)) {
+            assertTrue(busy.getMetaData().getURL().contains("routing-replica-0"));
+            //round robin would alternate, replica 0 has a connection in use
+            for (int i = 0; i < 2; i++) {
+                try (Connection connection = readOnlyConnection(dataSource)) {
+                    assertTrue(connection.getMetaData().getURL().contains("routing-replica-1"));
+                }
+            }
+        } finally {
+            persistenceUnitInfo.close();
+        }
+        assertEquals(List.of(1L, 2L), dataSource.getStatistics().replicaConnections());
+    }
+
+    @Test
+    public void testUnavailableReplicaFallsBackToThePrimary() throws SQLException {
+        CustomPersistenceUnitInfo persistenceUnitInfo = persistenceUnitInfo(ReplicaSettings.defaults());
+        ReplicaRoutingDataSource dataSource = routingDataSource(persistenceUnitInfo);
+        dataSource.getReplicas().get(0).close();
+        try (Connection first = readOnlyConnection(dataSource);
+             Connection second = readOnlyConnection(dataSource)) {
+            assertTrue(first.getMetaData().getURL().contains("routing-primary"));
+            assertTrue(second.getMetaData().getURL().contains("routing-replica-1"));
+            assertEquals(1, dataSource.getStatistics().replicaFailures());
+        } finally {
+            persistenceUnitInfo.close();
+        }
+    }
+
+    @Test
+    public void testWithoutReplicasEveryConnectionIsThePrimary() throws SQLException {
+        CustomPersistenceUnitInfo persistenceUnitInfo = new CustomPersistenceUnitInfo("routing-test",
+                PoolSettings.forUrl(PRIMARY_URL, "sa", ""));
+        try (Connection connection = ReplicaRoutingDataSource.readOnly(() -> {
+            try {
+                return persistenceUnitInfo.getNonJtaDataSource().getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })) {
+            assertTrue(connection.getMetaData().getURL().contains("routing-primary"));
+        } finally {
+            persistenceUnitInfo.close();
+        }
+    }
+
+    private static CustomPersistenceUnitInfo persistenceUnitInfo(ReplicaSettings replicaSettings) {
+        PoolSettings primary = PoolSettings.forUrl(PRIMARY_URL, "sa", "").withPoolSize(4, 1);
+        return new CustomPersistenceUnitInfo("routing-test", primary,
+                REPLICA_URLS.stream().map(primary::withJdbcUrl).toList(), replicaSettings, Map.of());
+    }
+
+    private static ReplicaRoutingDataSource routingDataSource(CustomPersistenceUnitInfo persistenceUnitInfo) {
+        return (ReplicaRoutingDataSource) persistenceUnitInfo.getNonJtaDataSource();
+    }
+
+    private static Connection readOnlyConnection(ReplicaRoutingDataSource dataSource) {
+        return ReplicaRoutingDataSource.readOnly(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static List<String> names(List<Product> products) {
+        return products.stream().map(Product::getName).toList();
+    }
+}
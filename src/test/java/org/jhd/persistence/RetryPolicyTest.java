@@ -0,0 +1,78 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.RollbackException;
+import junit.framework.TestCase;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class RetryPolicyTest extends TestCase {
+
+    @Test
+    public void testBackoffIsExponentialWithJitter() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(10), Duration.ofMillis(100), 2);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(retryPolicy.backoff(1).compareTo(Duration.ofMillis(10)) <= 0);
+            assertTrue(retryPolicy.backoff(3).compareTo(Duration.ofMillis(40)) <= 0);
+            //capped
+            assertTrue(retryPolicy.backoff(9).compareTo(Duration.ofMillis(100)) <= 0);
+        }
+        //not a constant
+        assertTrue(IntStream.range(0, 100).mapToObj(i -> retryPolicy.backoff(5)).distinct().count() > 1);
+    }
+
+    @Test
+    public void testFromProperties() {
+        RetryPolicy retryPolicy = RetryPolicy.from(Map.of(RetryPolicy.MAX_ATTEMPTS, "3",
+                RetryPolicy.MAX_BACKOFF, 200));
+
+        assertEquals(3, retryPolicy.maxAttempts());
+        assertEquals(RetryPolicy.defaults().initialBackoff(), retryPolicy.initialBackoff());
+        assertEquals(Duration.ofMillis(200), retryPolicy.maxBackoff());
+    }
+
+    @Test
+    public void testOptimisticLockFailures() {
+        assertTrue(RetryPolicy.isOptimisticLockFailure(new OptimisticLockException()));
+        assertTrue(RetryPolicy.isOptimisticLockFailure(
+                new RollbackException(new OptimisticLockException(new StaleObjectStateException("Product", 1L)))));
+        assertTrue(RetryPolicy.isOptimisticLockFailure(new StaleObjectStateException("Product", 1L)));
+        assertFalse(RetryPolicy.isOptimisticLockFailure(new IllegalStateException()));
+    }
+
+    @Test
+    public void testTransientFailures() {
+        assertTrue(RetryPolicy.isTransientFailure(new OptimisticLockException()));
+        assertTrue(RetryPolicy.isTransientFailure(new LockTimeoutException()));
+        assertTrue(RetryPolicy.isTransientFailure(
+                new PersistenceException(new JDBCConnectionException("connection lost", new SQLException()))));
+        assertTrue(RetryPolicy.isTransientFailure(
+                new PersistenceException(new SQLTransactionRollbackException("deadlock"))));
+        //a constraint violation fails the same way every time
+        assertFalse(RetryPolicy.isTransientFailure(
+                new PersistenceException(new SQLIntegrityConstraintViolationException("check constraint"))));
+        assertFalse(RetryPolicy.isTransientFailure(new IllegalStateException()));
+    }
+
+    @Test
+    public void testAtLeastOneAttempt() {
+        try {
+            new RetryPolicy(0, Duration.ZERO, Duration.ZERO, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
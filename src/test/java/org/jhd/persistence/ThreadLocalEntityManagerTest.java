@@ -0,0 +1,172 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(JUnit4.class)
+public class ThreadLocalEntityManagerTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private ThreadLocalEntityManager threadLocalEntityManager;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("hibernate.show_sql", "false"));
+        threadLocalEntityManager = new ThreadLocalEntityManager(emf, 10);
+    }
+
+    @After
+    public void teardown() {
+        threadLocalEntityManager.close();
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testContextIsReusedAcrossTransactions() {
+        Product product = new Product("Biscuit");
+        EntityManager first = threadLocalEntityManager.executeInTransaction(em -> {
+            em.persist(product);
+            return em;
+        });
+        EntityManager second = threadLocalEntityManager.executeInTransaction(em -> {
+            //identity map - no SELECT, the same instance
+            assertSame(product, em.find(Product.class, product.getId()));
+            return em;
+        });
+
+        assertSame(first, second);
+        assertEquals(1, threadLocalEntityManager.getEntityCount());
+    }
+
+    @Test
+    public void testNestedCallJoinsTheTransaction() {
+        threadLocalEntityManager.executeInTransaction(outer -> threadLocalEntityManager.executeInTransaction(inner -> {
+            assertSame(outer, inner);
+            inner.persist(new Product("Biscuit"));
+            return null;
+        }));
+
+        assertEquals(1, threadLocalEntityManager.getEntityCount());
+    }
+
+    @Test
+    public void testContextIsClearedPastTheThreshold() {
+        for (int i = 0; i < 10; i++) {
+            Product product = new Product("product-" + i);
+            threadLocalEntityManager.executeInTransaction(em -> {
+                em.persist(product);
+                return null;
+            });
+        }
+        assertEquals(10, threadLocalEntityManager.getEntityCount());
+        assertEquals(0, threadLocalEntityManager.getAutoClearCount());
+
+        threadLocalEntityManager.executeInTransaction(em -> {
+            em.persist(new Product("product-10"));
+            return null;
+        });
+
+        assertEquals(0, threadLocalEntityManager.getEntityCount());
+        assertEquals(1, threadLocalEntityManager.getAutoClearCount());
+    }
+
+    @Test
+    public void testFailedTransactionClearsTheContext() {
+        threadLocalEntityManager.executeInTransaction(em -> {
+            em.persist(new Product("Biscuit"));
+            return null;
+        });
+        try {
+            threadLocalEntityManager.executeInTransaction(em -> {
+                em.persist(new Product("Shoes"));
+                throw new IllegalStateException("boom");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+
+        assertEquals(0, threadLocalEntityManager.getEntityCount());
+        long count = threadLocalEntityManager.executeInTransaction(em -> em
+                .createQuery("SELECT COUNT(p) FROM Product p", Long.class)
+                .getSingleResult());
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void testEachThreadHasItsOwnContext() throws Exception {
+        int threads = 8;
+        int productsPerThread = 25;
+        Set<EntityManager> entityManagers = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < productsPerThread; i++) {
+                        threadLocalEntityManager.executeInTransaction(em -> {
+                            entityManagers.add(em);
+                            em.persist(new Product("product"));
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads, entityManagers.size());
+        assertEquals(threads, threadLocalEntityManager.size());
+        //25 entities per context, cleared twice (after the 11th and the 22nd)
+        assertEquals(threads * 2, threadLocalEntityManager.getAutoClearCount());
+        long count = threadLocalEntityManager.executeInTransaction(em -> em
+                .createQuery("SELECT COUNT(p) FROM Product p", Long.class)
+                .getSingleResult());
+        assertEquals(threads * productsPerThread, count);
+    }
+
+    @Test
+    public void testContextsOfDeadThreadsAreClosed() throws Exception {
+        EntityManager[] ofDeadThread = new EntityManager[1];
+        Thread thread = new Thread(() -> ofDeadThread[0] = threadLocalEntityManager.executeInTransaction(em -> em));
+        thread.start();
+        thread.join();
+        assertEquals(1, threadLocalEntityManager.size());
+
+        threadLocalEntityManager.executeInTransaction(em -> em);
+
+        assertFalse(ofDeadThread[0].isOpen());
+        assertEquals(1, threadLocalEntityManager.size());
+
+        threadLocalEntityManager.release();
+        assertEquals(0, threadLocalEntityManager.size());
+    }
+}
@@ -0,0 +1,99 @@
+package org.jhd.persistence;
+
+import jakarta.persistence.EntityManagerFactory;
+import junit.framework.TestCase;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.hibernate.stat.Statistics;
+import org.jhd.dao.impl.ProductDao;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class WarmupTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private CustomPersistenceUnitInfo persistenceUnitInfo;
+
+    @Before
+    public void init() {
+        //opens a single connection by itself
+        persistenceUnitInfo = new CustomPersistenceUnitInfo("warmup-test",
+                PoolSettings.forUrl("jdbc:h2:mem:warmup-test;DB_CLOSE_DELAY=-1", "sa", "").withPoolSize(4, 1));
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo, Map.of(
+                "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                "hibernate.generate_statistics", "true",
+                "jakarta.persistence.schema-generation.database.action", "drop-and-create"));
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null && emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testWarmupOpensThePoolAndRunsTheNamedQueries() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Warmup.Result result = Warmup.run(emf, new WarmupSettings(true, 0, 2));
+
+        assertEquals(4, result.connections());
+        assertEquals(4, persistenceUnitInfo.getPoolStatistics().totalConnections());
+        assertEquals(0, persistenceUnitInfo.getPoolStatistics().activeConnections());
+        //Product.findAll and Product.findByIds, twice per connection
+        assertEquals(2, result.namedQueries());
+        assertEquals(1, result.entities());
+        assertEquals(16, statistics.getQueryExecutionCount());
+    }
+
+    @Test
+    public void testWarmupChangesNothing() {
+        new ProductDao(emf).save(new Product("Biscuit"));
+
+        Warmup.run(emf, new WarmupSettings(true, 2, 1));
+
+        assertEquals(1, new ProductDao(emf).getAll().size());
+    }
+
+    @Test
+    public void testConnectionsAreCappedToThePool() {
+        assertEquals(4, Warmup.run(emf, new WarmupSettings(true, 10, 1)).connections());
+    }
+
+    @Test
+    public void testWarmupOpensThePrimaryPoolOfAUnitWithReplicas() {
+        emf.close();
+        PoolSettings primary = PoolSettings.forUrl("jdbc:h2:mem:warmup-test;DB_CLOSE_DELAY=-1", "sa", "")
+                .withPoolSize(3, 1);
+        persistenceUnitInfo = new CustomPersistenceUnitInfo("warmup-test", primary,
+                List.of(primary.withJdbcUrl("jdbc:h2:mem:warmup-replica;DB_CLOSE_DELAY=-1").withPoolSize(5, 1)),
+                ReplicaSettings.defaults(), Map.of());
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo, Map.of(
+                "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                "jakarta.persistence.schema-generation.database.action", "drop-and-create"));
+
+        Warmup.Result result = Warmup.run(emf, new WarmupSettings(true, 0, 1));
+
+        //read-write transactions: the primary's pool
+        assertEquals(3, result.connections());
+        assertEquals(3, persistenceUnitInfo.getPoolStatistics().totalConnections());
+    }
+
+    @Test
+    public void testSettingsFromProperties() {
+        assertEquals(WarmupSettings.defaults(), WarmupSettings.from(Map.of()));
+        assertEquals(new WarmupSettings(false, 3, 50), WarmupSettings.from(Map.of(
+                WarmupSettings.ENABLED, "false",
+                WarmupSettings.CONNECTIONS, "3",
+                WarmupSettings.ITERATIONS, "50")));
+    }
+}
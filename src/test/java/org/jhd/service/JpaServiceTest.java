@@ -0,0 +1,140 @@
+package org.jhd.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import junit.framework.TestCase;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.entity.Product;
+import org.jhd.metrics.PoolStatistics;
+import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.PoolSettings;
+import org.jhd.persistence.ReplicaSettings;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class JpaServiceTest extends TestCase {
+    private static final String H2_UNIT = "jpa-hibernate-persistence-unit-h2-test";
+    private static final String TENANT_UNIT = "tenant-test";
+
+    @After
+    public void teardown() {
+        JpaService.unregister(TENANT_UNIT);
+        JpaService.shutdownAll();
+    }
+
+    @Test
+    public void testOneInstancePerUnit() {
+        JpaService jpaService = JpaService.getInstance(H2_UNIT);
+
+        assertSame(jpaService, JpaService.getInstance(H2_UNIT));
+        assertEquals(H2_UNIT, jpaService.getPersistenceUnitName());
+        assertEquals(Set.of(H2_UNIT), JpaService.getRunningPersistenceUnits());
+    }
+
+    @Test
+    public void testConcurrentCallersShareTheFirstInstance() {
+        AtomicInteger created = new AtomicInteger();
+        JpaService.register(TENANT_UNIT, () -> {
+            created.incrementAndGet();
+            return tenantEntityManagerFactory();
+        });
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<JpaService>> callers = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return JpaService.getInstance(TENANT_UNIT);
+                }))
+                .toList();
+        start.countDown();
+
+        assertEquals(1, callers.stream().map(CompletableFuture::join).distinct().count());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testUnitsHaveIndependentLifecycles() {
+        JpaService.register(TENANT_UNIT, JpaServiceTest::tenantEntityManagerFactory);
+        JpaService h2 = JpaService.getInstance(H2_UNIT);
+        JpaService tenant = JpaService.getInstance(TENANT_UNIT);
+        tenant.runInTransaction(em -> {
+            em.persist(new Product("Biscuit"));
+            return null;
+        });
+
+        h2.shutdown();
+
+        assertFalse(h2.getEntityManagerFactory().isOpen());
+        assertEquals(Set.of(TENANT_UNIT), JpaService.getRunningPersistenceUnits());
+        assertEquals(1, tenant.runReadOnly(em -> em.createNamedQuery(Product.FIND_ALL, Product.class)
+                .getResultList()).size());
+        //shutting a stopped instance down again does nothing
+        h2.shutdown();
+        //a new one after a shutdown
+        JpaService restarted = JpaService.getInstance(H2_UNIT);
+        assertNotSame(h2, restarted);
+        assertTrue(restarted.getEntityManagerFactory().isOpen());
+    }
+
+    @Test
+    public void testShutdownAll() {
+        JpaService.register(TENANT_UNIT, JpaServiceTest::tenantEntityManagerFactory);
+        EntityManagerFactory h2 = JpaService.getInstance(H2_UNIT).getEntityManagerFactory();
+        EntityManagerFactory tenant = JpaService.getInstance(TENANT_UNIT).getEntityManagerFactory();
+
+        JpaService.shutdownAll();
+
+        assertFalse(h2.isOpen());
+        assertFalse(tenant.isOpen());
+        assertTrue(JpaService.getRunningPersistenceUnits().isEmpty());
+    }
+
+    @Test
+    public void testRegisterTwiceFails() {
+        JpaService.register(TENANT_UNIT, JpaServiceTest::tenantEntityManagerFactory);
+        try {
+            JpaService.register(TENANT_UNIT, JpaServiceTest::tenantEntityManagerFactory);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testPoolStatisticsOfAUnitWithReplicas() {
+        PoolSettings primary = PoolSettings.forUrl("jdbc:h2:mem:tenant-test;DB_CLOSE_DELAY=-1", "sa", "")
+                .withPoolSize(2, 1);
+        JpaService.register(TENANT_UNIT, () -> new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo(TENANT_UNIT, primary,
+                        List.of(primary.withJdbcUrl("jdbc:h2:mem:tenant-replica;DB_CLOSE_DELAY=-1").withPoolSize(3, 1)),
+                        ReplicaSettings.defaults(), Map.of()),
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                        "jakarta.persistence.schema-generation.database.action", "drop-and-create")));
+
+        PoolStatistics statistics = JpaService.getInstance(TENANT_UNIT).getPoolStatistics();
+
+        //the primary's pool, opened by the warm-up - the replica's has 3 connections
+        assertEquals(2, statistics.totalConnections());
+        assertEquals(0, statistics.connectionTimeouts());
+    }
+
+    private static EntityManagerFactory tenantEntityManagerFactory() {
+        return new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo(TENANT_UNIT,
+                        PoolSettings.forUrl("jdbc:h2:mem:tenant-test;DB_CLOSE_DELAY=-1", "sa", "").withPoolSize(2, 1)),
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                        "jakarta.persistence.schema-generation.database.action", "drop-and-create"));
+    }
+}
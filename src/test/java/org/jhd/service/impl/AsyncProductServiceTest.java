@@ -0,0 +1,132 @@
+package org.jhd.service.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.PoolSettings;
+import org.jhd.persistence.ReplicaSettings;
+import org.jhd.service.Service;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class AsyncProductServiceTest extends TestCase {
+    private static final int CALLERS = 1000;
+    private static final int POOL_SIZE = 8;
+
+    private static EntityManagerFactory emf;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private AsyncProductService asyncService;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("hibernate.show_sql", "false"));
+        asyncService = new AsyncProductService(concurrencyTracking(new ProductService(emf)), POOL_SIZE);
+    }
+
+    @After
+    public void teardown() {
+        asyncService.close();
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    //1k callers fanning out lookups at once: all of them complete and never more than POOL_SIZE run together
+    @Test
+    public void testConcurrentCallers() {
+        List<Product> products = IntStream.range(0, 100).mapToObj(i -> new Product("Product " + i)).toList();
+        asyncService.saveAll(products).join();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Optional<Product>>> lookups = IntStream.range(0, CALLERS)
+                .mapToObj(i -> asyncService.get(products.get(i % products.size()).getId()))
+                .toList();
+        CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new)).join();
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.printf("%d concurrent lookups in %d ms - %.0f lookups/s%n", CALLERS, elapsedNanos / 1_000_000,
+                CALLERS * 1e9 / elapsedNanos);
+
+        assertTrue(lookups.stream().allMatch(lookup -> lookup.join().isPresent()));
+        assertTrue(maxInFlight.get() <= POOL_SIZE);
+        assertEquals(0, asyncService.getQueueLength());
+    }
+
+    @Test
+    public void testFailureCompletesTheFutureExceptionally() {
+        Product product = new Product("Biscuit");
+        asyncService.save(product).join();
+        asyncService.delete(product).join();
+
+        try {
+            asyncService.updateWithGetPersistent(product, new ProductDto("Cake", 1.0)).join();
+            fail();
+        } catch (CompletionException expected) {
+        }
+        //the failed call gave its permit back
+        assertEquals(Optional.empty(), asyncService.get(product.getId()).join());
+    }
+
+    @Test
+    public void testConcurrencyIsTheSizeOfThePool() {
+        EntityManagerFactory pooled = new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo("async-test",
+                        PoolSettings.forUrl("jdbc:h2:mem:async-test", "sa", "").withPoolSize(6, 1)),
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect"));
+        try {
+            assertEquals(6, AsyncProductService.maximumPoolSize(pooled));
+        } finally {
+            pooled.close();
+        }
+    }
+
+    @Test
+    public void testConcurrencyIsTheSizeOfThePrimaryPoolWithReplicas() {
+        PoolSettings primary = PoolSettings.forUrl("jdbc:h2:mem:async-primary", "sa", "").withPoolSize(6, 1);
+        EntityManagerFactory routed = new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo("async-test", primary,
+                        List.of(primary.withJdbcUrl("jdbc:h2:mem:async-replica").withPoolSize(3, 1)),
+                        ReplicaSettings.defaults(), Map.of()),
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect"));
+        try {
+            assertEquals(6, AsyncProductService.maximumPoolSize(routed));
+            new AsyncProductService(routed).close();
+        } finally {
+            routed.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Service<Product, ProductDto> concurrencyTracking(Service<Product, ProductDto> service) {
+        return (Service<Product, ProductDto>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Service.class}, (proxy, method, args) -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        return method.invoke(service, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+    }
+}
@@ -0,0 +1,165 @@
+package org.jhd.service.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.jhd.cache.NearCacheSettings;
+import org.jhd.cache.NearCacheSettings.EvictionPolicy;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(JUnit4.class)
+public class CachingProductServiceTest extends TestCase {
+    private static EntityManagerFactory emf;
+    private CachingProductService productService;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test");
+        productService = new CachingProductService(new ProductService(emf),
+                new NearCacheSettings(EvictionPolicy.W_TINY_LFU, 100, Duration.ofMinutes(5)));
+    }
+
+    @After
+    public void teardown() {
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testGetIsServedFromCache() {
+        Product product = new Product("Biscuit");
+        product.setPrice(8.37);
+        productService.save(product);
+
+        Product productFromCache = productService.get(product.getId()).orElseThrow();
+        assertEquals("Biscuit", productFromCache.getName());
+        //modifying the returned product does not modify the cached one
+        productFromCache.setName("Cake");
+
+        assertEquals("Biscuit", productService.get(product.getId()).orElseThrow().getName());
+        assertEquals(2, productService.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testGetAllByIdLoadsOnlyMisses() {
+        Product cached = new Product("Biscuit");
+        productService.save(cached);
+        //saved behind the cache
+        Product notCached = new Product("Shoes");
+        new ProductService(emf).save(notCached);
+
+        Map<Long, Product> products = productService.getAllById(List.of(notCached.getId(), cached.getId(), -1L));
+
+        assertEquals(List.of(notCached.getId(), cached.getId()), List.copyOf(products.keySet()));
+        assertEquals("Shoes", products.get(notCached.getId()).getName());
+        assertEquals(1, productService.getStatistics().hitCount());
+        assertEquals(1, productService.getStatistics().loadCount());
+        //now cached
+        productService.get(notCached.getId());
+        assertEquals(2, productService.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testUpdateRefreshesCache() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productService.save(product);
+        productService.get(product.getId());
+
+        Product updatedProduct = productService.updateWithGetPersistent(product, new ProductDto("Burger", 10.0));
+        assertEquals("Burger", productService.get(product.getId()).orElseThrow().getName());
+
+        productService.updateWithMergeDetached(updatedProduct, new ProductDto("Pizza", 12.0));
+        assertEquals("Pizza", productService.get(product.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void testConflictingUpdateInvalidatesCache() {
+        Product product = new Product("Sandwich");
+        product.setPrice(5.37);
+        productService.save(product);
+        Product cachedProduct = productService.get(product.getId()).orElseThrow();
+
+        //changed behind the cache
+        Product updatedProduct = new ProductService(emf).updateWithGetPersistent(product,
+                new ProductDto("Burger", 10.0));
+
+        try {
+            productService.updateWithGetPersistent(cachedProduct, new ProductDto("Pizza", 12.0));
+            fail("OptimisticLockException expected");
+        } catch (OptimisticLockException expected) {
+        }
+        Product reloaded = productService.get(product.getId()).orElseThrow();
+        assertEquals("Burger", reloaded.getName());
+        assertEquals(updatedProduct.getVersion(), reloaded.getVersion());
+    }
+
+    @Test
+    public void testSlowUpdateDoesNotOverwriteALaterOne() throws Exception {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            CountDownLatch committed = new CountDownLatch(1);
+            CountDownLatch released = new CountDownLatch(1);
+            //commits, then waits before it returns to the cache
+            CachingProductService cachingService = new CachingProductService(new ProductService(emf) {
+                @Override
+                public Product updateWithGetPersistent(Product product, ProductDto productDto) {
+                    Product updatedProduct = super.updateWithGetPersistent(product, productDto);
+                    if (productDto.name().equals("Burger")) {
+                        committed.countDown();
+                        try {
+                            released.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    return updatedProduct;
+                }
+            }, new NearCacheSettings(evictionPolicy, 100, Duration.ofMinutes(5)));
+            Product product = new Product("Sandwich");
+            cachingService.save(product);
+
+            CompletableFuture<Product> slowUpdate = CompletableFuture.supplyAsync(() ->
+                    cachingService.updateWithGetPersistent(unversioned(product), new ProductDto("Burger", 10.0)));
+            committed.await();
+            Product laterUpdate = cachingService.updateWithGetPersistent(unversioned(product),
+                    new ProductDto("Pizza", 12.0));
+            released.countDown();
+            slowUpdate.join();
+
+            Product cached = cachingService.get(product.getId()).orElseThrow();
+            assertEquals("Pizza", cached.getName());
+            assertEquals(laterUpdate.getVersion(), cached.getVersion());
+        }
+    }
+
+    @Test
+    public void testDeleteInvalidatesCache() {
+        Product product = new Product("Milk");
+        productService.save(product);
+        productService.get(product.getId());
+
+        productService.delete(product);
+        assertTrue(productService.get(product.getId()).isEmpty());
+    }
+
+    //no version: updated whatever the version of the row
+    private static Product unversioned(Product product) {
+        Product copy = new Product(product.getName());
+        copy.setId(product.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,352 @@
+package org.jhd.service.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Persistence;
+import junit.framework.TestCase;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.jhd.dto.ProductDto;
+import org.jhd.entity.Product;
+import org.jhd.persistence.CustomPersistenceUnitInfo;
+import org.jhd.persistence.PoolSettings;
+import org.jhd.persistence.RetryPolicy;
+import org.jhd.service.JpaService;
+import org.jhd.service.Service;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+@RunWith(JUnit4.class)
+public class WriteBehindProductUpdaterTest extends TestCase {
+    private static final String SHUTDOWN_UNIT = "write-behind-test";
+
+    private static EntityManagerFactory emf;
+    private Service<Product, ProductDto> productService;
+    private List<Product> products;
+
+    @Before
+    public void init() {
+        emf = Persistence.createEntityManagerFactory("jpa-hibernate-persistence-unit-h2-test",
+                Map.of("hibernate.show_sql", "false"));
+        productService = new ProductService(emf);
+        products = IntStream.range(0, 20)
+                .mapToObj(i -> {
+                    Product product = new Product("product-" + i);
+                    product.setPrice(1.0);
+                    return product;
+                })
+                .toList();
+        productService.saveAll(products);
+    }
+
+    @After
+    public void teardown() {
+        JpaService.unregister(SHUTDOWN_UNIT);
+        if(emf != null) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() {
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService, manualFlush());
+        for (int i = 1; i <= 100; i++) {
+            for (int p = 0; p < 3; p++) {
+                updater.updatePrice(products.get(p).getId(), i);
+            }
+        }
+
+        assertEquals(3, updater.flush());
+        WriteBehindProductUpdater.Statistics statistics = updater.getStatistics();
+        assertEquals(300, statistics.accepted());
+        assertEquals(297, statistics.coalesced());
+        assertEquals(3, statistics.written());
+        assertEquals(0, statistics.pending());
+        for (int p = 0; p < 3; p++) {
+            assertEquals(100.0, productService.get(products.get(p).getId()).orElseThrow().getPrice());
+        }
+        updater.close();
+    }
+
+    @Test
+    public void testPartialUpdatesAreMerged() {
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService, manualFlush());
+        long id = products.get(0).getId();
+        updater.updatePrice(id, 9.99);
+        updater.updateName(id, "Cake");
+        updater.updatePrice(id, 10.99);
+        updater.flush();
+
+        Product product = productService.get(id).orElseThrow();
+        assertEquals("Cake", product.getName());
+        assertEquals(10.99, product.getPrice());
+        updater.close();
+    }
+
+    @Test
+    public void testUnknownProductsAreSkipped() {
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService, manualFlush());
+        updater.updatePrice(products.get(0).getId(), 2.0);
+        updater.updatePrice(-1, 2.0);
+
+        assertEquals(1, updater.flush());
+        updater.close();
+    }
+
+    @Test
+    public void testFlushBySize() throws InterruptedException {
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService,
+                new WriteBehindSettings(Duration.ofHours(1), 10, RetryPolicy.none()));
+        products.subList(0, 10).forEach(product -> updater.updatePrice(product.getId(), 5.0));
+
+        waitUntilWritten(updater, 10);
+        assertEquals(5.0, productService.get(products.get(9).getId()).orElseThrow().getPrice());
+        updater.close();
+    }
+
+    @Test
+    public void testPeriodicFlush() throws InterruptedException {
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(productService,
+                new WriteBehindSettings(Duration.ofMillis(20), 1_000, RetryPolicy.none()));
+        updater.updatePrice(products.get(0).getId(), 5.0);
+
+        waitUntilWritten(updater, 1);
+        updater.close();
+    }
+
+    @Test
+    public void testFailedFlushKeepsTheUpdates() {
+        AtomicInteger failures = new AtomicInteger(1);
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(failingUpdateAll(failures), manualFlush());
+        long id = products.get(0).getId();
+        updater.updatePrice(id, 5.0);
+        updater.updateName(id, "Cake");
+        try {
+            updater.flush();
+            fail("exception expected");
+        } catch (IllegalStateException expected) {
+        }
+        //arrived after the failed flush - newer than what is put back
+        updater.updatePrice(id, 6.0);
+
+        assertEquals(1, updater.flush());
+        Product product = productService.get(id).orElseThrow();
+        assertEquals("Cake", product.getName());
+        assertEquals(6.0, product.getPrice());
+        assertEquals(1, updater.getStatistics().failedFlushes());
+        updater.close();
+    }
+
+    @Test
+    public void testUpdateThatAlwaysFailsIsDropped() {
+        long poisoned = products.get(0).getId();
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(failingUpdateOf(poisoned), manualFlush());
+        products.subList(0, 5).forEach(product -> updater.updatePrice(product.getId(), 3.0));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                updater.flush();
+                fail("exception expected");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        //the third failed flush in a row writes them one at a time
+        assertEquals(4, updater.flush());
+
+        WriteBehindProductUpdater.Statistics statistics = updater.getStatistics();
+        assertEquals(1, statistics.dropped());
+        assertEquals(0, statistics.pending());
+        assertEquals(1.0, productService.get(poisoned).orElseThrow().getPrice());
+        assertEquals(3.0, productService.get(products.get(4).getId()).orElseThrow().getPrice());
+        //the next flushes are not held back
+        updater.updatePrice(products.get(5).getId(), 4.0);
+        assertEquals(1, updater.flush());
+        updater.close();
+    }
+
+    @Test
+    public void testUpdateThatConflictsAloneIsKept() {
+        long poisoned = products.get(0).getId();
+        long conflicting = products.get(1).getId();
+        AtomicInteger conflicts = new AtomicInteger(1);
+        Service<Product, ProductDto> failing = failingUpdateOf(poisoned);
+        @SuppressWarnings("unchecked")
+        Service<Product, ProductDto> conflictingOnce = (Service<Product, ProductDto>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{Service.class}, (proxy, method, args) -> {
+                    //another writer updated the product between the read and the write of its own updateAll()
+                    if (method.getName().equals("updateAll") && args[0].equals(Map.of(conflicting,
+                            new ProductDto(null, 3.0))) && conflicts.getAndDecrement() > 0) {
+                        throw new OptimisticLockException("Row was updated or deleted by another transaction");
+                    }
+                    try {
+                        return method.invoke(failing, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(conflictingOnce, manualFlush());
+        products.subList(0, 5).forEach(product -> updater.updatePrice(product.getId(), 3.0));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                updater.flush();
+                fail("exception expected");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals(3, updater.flush());
+
+        WriteBehindProductUpdater.Statistics statistics = updater.getStatistics();
+        assertEquals(1, statistics.dropped());
+        assertEquals(1, statistics.pending());
+        assertEquals(1, updater.flush());
+        assertEquals(3.0, productService.get(conflicting).orElseThrow().getPrice());
+        updater.close();
+    }
+
+    @Test
+    public void testUpdatesAreKeptWhenNoneCanBeWritten() {
+        AtomicInteger failures = new AtomicInteger(Integer.MAX_VALUE);
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(failingUpdateAll(failures), manualFlush());
+        products.subList(0, 5).forEach(product -> updater.updatePrice(product.getId(), 3.0));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                updater.flush();
+                fail("exception expected");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        assertEquals(0, updater.getStatistics().dropped());
+        assertEquals(5, updater.getStatistics().pending());
+        failures.set(0);
+        assertEquals(5, updater.flush());
+        updater.close();
+    }
+
+    @Test
+    public void testCloseWritesPendingUpdates() {
+        AtomicInteger failures = new AtomicInteger(2);
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(failingUpdateAll(failures),
+                new WriteBehindSettings(Duration.ofHours(1), 1_000,
+                        new RetryPolicy(3, Duration.ZERO, Duration.ZERO, 1)));
+        products.forEach(product -> updater.updatePrice(product.getId(), 7.0));
+
+        updater.close();
+
+        assertEquals(20, updater.getStatistics().written());
+        assertTrue(productService.getAll().stream().allMatch(product -> product.getPrice() == 7.0));
+        try {
+            updater.updatePrice(products.get(0).getId(), 8.0);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testCloseThrowsWhenUpdatesCannotBeWritten() {
+        AtomicInteger failures = new AtomicInteger(Integer.MAX_VALUE);
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(failingUpdateAll(failures),
+                new WriteBehindSettings(Duration.ofHours(1), 1_000,
+                        new RetryPolicy(2, Duration.ZERO, Duration.ZERO, 1)));
+        updater.updatePrice(products.get(0).getId(), 7.0);
+
+        try {
+            updater.close();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("1 product updates could not be written", e.getMessage());
+        }
+        assertEquals(2, updater.getStatistics().failedFlushes());
+    }
+
+    @Test
+    public void testJpaServiceShutdownWritesPendingUpdates() {
+        JpaService.register(SHUTDOWN_UNIT, () -> shutdownUnit("drop-and-create"));
+        JpaService jpaService = JpaService.getInstance(SHUTDOWN_UNIT);
+        ProductService unitService = new ProductService(jpaService.getEntityManagerFactory());
+        jpaService.closeOnShutdown(unitService);
+        List<Product> unitProducts = List.of(new Product("Biscuit"), new Product("Shoes"), new Product("Kettle"));
+        unitService.saveAll(unitProducts);
+        //closed first - last registered
+        WriteBehindProductUpdater updater = new WriteBehindProductUpdater(unitService, manualFlush());
+        jpaService.closeOnShutdown(updater);
+        unitProducts.forEach(product -> updater.updatePrice(product.getId(), 7.0));
+
+        jpaService.shutdown();
+
+        assertFalse(jpaService.getEntityManagerFactory().isOpen());
+        //committed before the pool was closed - read back by a new EntityManagerFactory
+        EntityManagerFactory reopened = shutdownUnit("none");
+        try (ProductService reader = new ProductService(reopened)) {
+            assertEquals(3, reader.getAll().size());
+            assertTrue(reader.getAll().stream().allMatch(product -> product.getPrice() == 7.0));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static WriteBehindSettings manualFlush() {
+        return new WriteBehindSettings(Duration.ofHours(1), 1_000, RetryPolicy.none());
+    }
+
+    private static void waitUntilWritten(WriteBehindProductUpdater updater, long rows) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (updater.getStatistics().written() < rows && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(rows, updater.getStatistics().written());
+    }
+
+    //an in memory database kept after its last connection is closed
+    private static EntityManagerFactory shutdownUnit(String schemaAction) {
+        return new HibernatePersistenceProvider().createContainerEntityManagerFactory(
+                new CustomPersistenceUnitInfo(SHUTDOWN_UNIT,
+                        PoolSettings.forUrl("jdbc:h2:mem:write-behind-test;DB_CLOSE_DELAY=-1", "sa", "")),
+                Map.of("hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+                        "jakarta.persistence.schema-generation.database.action", schemaAction));
+    }
+
+    //updateAll() throws whenever the updates include the product
+    @SuppressWarnings("unchecked")
+    private Service<Product, ProductDto> failingUpdateOf(long id) {
+        return (Service<Product, ProductDto>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Service.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("updateAll") && ((Map<?, ?>) args[0]).containsKey(id)) {
+                        throw new IllegalStateException("check constraint violated");
+                    }
+                    try {
+                        return method.invoke(productService, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    //updateAll() throws the first failures.get() times
+    @SuppressWarnings("unchecked")
+    private Service<Product, ProductDto> failingUpdateAll(AtomicInteger failures) {
+        return (Service<Product, ProductDto>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Service.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("updateAll") && failures.getAndDecrement() > 0) {
+                        throw new IllegalStateException("database unavailable");
+                    }
+                    try {
+                        return method.invoke(productService, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}